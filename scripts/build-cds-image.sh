@@ -0,0 +1,26 @@
+#!/usr/bin/env bash
+# Builds the jlink image and adds class data sharing archives to it:
+# a base archive of the runtime's own classes, then a dynamic archive recorded
+# from a training run of the server, which the launcher then uses on every start.
+
+set -e
+
+cd "$(dirname "$0")/.."
+
+mvn -q clean javafx:jlink
+
+IMAGE=target/ci628server
+LAUNCHER=$IMAGE/bin/Start-CI628server
+
+# jlink images do not include the default archive that dynamic archives build on
+"$IMAGE/bin/java" -Xshare:dump
+
+"$IMAGE/bin/java" \
+    -XX:ArchiveClassesAtExit="$IMAGE/lib/pong.jsa" \
+    -Dpong.training=true \
+    -m pong.main/com.almasb.fxglgames.pong.PongApp
+
+# the launcher sets DIR after JLINK_VM_OPTIONS, so set the options again once DIR is known
+sed -i '/^DIR=/a JLINK_VM_OPTIONS="-XX:SharedArchiveFile=$DIR/../lib/pong.jsa -Xshare:auto"' "$LAUNCHER"
+
+echo "Image with CDS archive: $IMAGE"
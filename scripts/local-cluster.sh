@@ -0,0 +1,28 @@
+#!/usr/bin/env bash
+# Runs a gateway on port 55555 in front of N backend servers, all on this host.
+# Usage: scripts/local-cluster.sh [backends]
+
+set -e
+
+BACKENDS=${1:-2}
+
+cd "$(dirname "$0")/.."
+
+mvn -q compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+CP="target/classes:$(cat target/classpath.txt)"
+
+PIDS=()
+trap 'kill "${PIDS[@]}" 2>/dev/null' EXIT
+
+SPECS=""
+for i in $(seq 1 "$BACKENDS"); do
+    PORT=$((55600 + i))
+    STATUS_PORT=$((56600 + i))
+
+    java -cp "$CP" -Dpong.port=$PORT -Dpong.statusPort=$STATUS_PORT com.almasb.fxglgames.pong.PongApp &
+    PIDS+=($!)
+
+    SPECS="$SPECS${SPECS:+,}127.0.0.1:$PORT:$STATUS_PORT"
+done
+
+java -cp "$CP" -Dpong.gateway.backends="$SPECS" com.almasb.fxglgames.pong.PongGateway
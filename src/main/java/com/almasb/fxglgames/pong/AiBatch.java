@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+/**
+ * Inputs and outputs of every AI controlled bat for one tick, stored as parallel primitive arrays
+ * so that an {@link AiPolicy} decides for all of them in one pass.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public final class AiBatch {
+
+    public static final int VERTICAL = 0;
+    public static final int HORIZONTAL = 1;
+
+    // bat centre, size and the axis it moves along
+    final double[] batX;
+    final double[] batY;
+    final double[] batWidth;
+    final double[] batHeight;
+    final int[] axis;
+
+    // ball centre and velocity in pixels per second, and the world it bounces in
+    final double[] ballX;
+    final double[] ballY;
+    final double[] ballVelocityX;
+    final double[] ballVelocityY;
+    final double[] worldWidth;
+    final double[] worldHeight;
+
+    /**
+     * Output: -1 to move towards 0 along the bat's axis, 1 to move away from 0, 0 to stop.
+     */
+    final int[] command;
+
+    // where in the caller's world each entry came from
+    final int[] seat;
+
+    private int size = 0;
+
+    public AiBatch(int capacity) {
+        batX = new double[capacity];
+        batY = new double[capacity];
+        batWidth = new double[capacity];
+        batHeight = new double[capacity];
+        axis = new int[capacity];
+        ballX = new double[capacity];
+        ballY = new double[capacity];
+        ballVelocityX = new double[capacity];
+        ballVelocityY = new double[capacity];
+        worldWidth = new double[capacity];
+        worldHeight = new double[capacity];
+        command = new int[capacity];
+        seat = new int[capacity];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return index of the new entry
+     */
+    public int add(int seat, int axis,
+                   double batX, double batY, double batWidth, double batHeight,
+                   double ballX, double ballY, double ballVelocityX, double ballVelocityY,
+                   double worldWidth, double worldHeight) {
+
+        int i = size++;
+        this.seat[i] = seat;
+        this.axis[i] = axis;
+        this.batX[i] = batX;
+        this.batY[i] = batY;
+        this.batWidth[i] = batWidth;
+        this.batHeight[i] = batHeight;
+        this.ballX[i] = ballX;
+        this.ballY[i] = ballY;
+        this.ballVelocityX[i] = ballVelocityX;
+        this.ballVelocityY[i] = ballVelocityY;
+        this.worldWidth[i] = worldWidth;
+        this.worldHeight[i] = worldHeight;
+        this.command[i] = 0;
+        return i;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getSeat(int i) {
+        return seat[i];
+    }
+
+    public int getCommand(int i) {
+        return command[i];
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+/**
+ * Decides the moves of all AI controlled bats in a batch.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public interface AiPolicy {
+
+    /**
+     * Fills {@link AiBatch#command} for every entry in the batch.
+     */
+    void decide(AiBatch batch);
+
+    /**
+     * @param name "predict", "follow" or "off"
+     * @return the policy or null for "off"
+     */
+    static AiPolicy forName(String name) {
+        switch (name) {
+            case "predict":
+                return new PredictiveAiPolicy();
+            case "follow":
+                return new FollowAiPolicy();
+            case "off":
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown AI policy: " + name);
+        }
+    }
+}
@@ -46,8 +46,18 @@ public class BallComponent extends Component {
 
     @Override
     public void onUpdate(double tpf) {
-        limitVelocity();
-        checkOffscreen();
+        // in lockstep mode the ball is only moved by LockstepSimulation
+        if (PongApp.LOCKSTEP_MODE)
+            return;
+
+        var event = new PongEvents.BallUpdate();
+        event.begin();
+
+        event.velocityCorrected = limitVelocity();
+        event.positionReset = checkOffscreen();
+
+        event.room = PongEvents.currentRoom;
+        event.commit();
     }
 
     public void setLastBatHit(Entity bat) {
@@ -58,18 +68,27 @@ public class BallComponent extends Component {
         return lastBatHit;
     }
 
-    private void limitVelocity() {
+    /**
+     * @return true if the velocity had to be corrected
+     */
+    private boolean limitVelocity() {
+        boolean corrected = false;
+
         if (!isSlowedDown){
         // we don't want the ball to move too slow in X direction
         if (abs(physics.getVelocityX()) < 5 * 60) {
             physics.setVelocityX(signum(physics.getVelocityX()) * 5 * 60);
+            corrected = true;
         }
 
         // we don't want the ball to move too fast in Y direction
         if (abs(physics.getVelocityY()) > 5 * 60 * 2) {
             physics.setVelocityY(signum(physics.getVelocityY()) * 5 * 60);
+            corrected = true;
         }
     }
+
+        return corrected;
     }
 
 
@@ -90,12 +109,14 @@ public class BallComponent extends Component {
 
         // this is a hack:
     // we use a physics engine, so it is possible to push the ball through a wall to outside of the screen
-    private void checkOffscreen() {
+    private boolean checkOffscreen() {
         if (getEntity().getBoundingBoxComponent().isOutside(getGameScene().getViewport().getVisibleArea())) {
             physics.overwritePosition(new Point2D(
                     getAppWidth() / 2,
                     getAppHeight() / 2
             ));
+            return true;
         }
+        return false;
     }
 }
@@ -0,0 +1,336 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+import com.almasb.fxgl.net.Connection;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Server-side state kept for each connected client.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public class ClientSession {
+
+    // snapshots are sent every 1..MAX_SNAPSHOT_INTERVAL ticks, one extra tick per RTT_STEP_MS of round trip
+    private static final int MAX_SNAPSHOT_INTERVAL = 6;
+    private static final double RTT_STEP_MS = 100;
+
+    // once this many snapshots are waiting to be written, new ones are dropped instead of queued
+    private static final int MAX_SNAPSHOT_BACKLOG = 2;
+
+    private final Connection<String> connection;
+    private final String playerId;
+    // claimed once the writer has sent PLAYER_ID, see getWriter()
+    private PongApp.MessageWriterS writer;
+    private PongApp.MessageReaderS reader;
+
+    // key state asked for by the client and last applied to the bat, per seat key
+    private final boolean[] requestedKeys = new boolean[2];
+    private final boolean[] appliedKeys = new boolean[2];
+    private long keyRequests = 0;
+    private long keyChanges = 0;
+
+    private final AtomicReference<Lobby.Ticket> ticket = new AtomicReference<>();
+
+    // set by the game loop when the room starts
+    private Room room;
+    private int seat = -1;
+
+    private int pingSeq = 0;
+    private int lastPongSeq = -1;
+
+    // -1 until the first pong arrives
+    private double rtt = -1;
+    private double jitter = 0;
+    private double clockOffset = 0;
+
+    private int snapshotInterval = 1;
+    private long nextSnapshotTick = 0;
+    private long snapshotsSent = 0;
+    private long snapshotsDropped = 0;
+
+    ClientSession(Connection<String> connection, String playerId) {
+        this.connection = connection;
+        this.playerId = playerId;
+    }
+
+    public Connection<String> getConnection() {
+        return connection;
+    }
+
+    public String getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * Writers are matched to sessions by the player id they send first, not by creation order,
+     * so a connection that fails while opening cannot shift writers onto other sessions.
+     *
+     * @return this connection's writer, or null until PLAYER_ID has been written
+     */
+    synchronized PongApp.MessageWriterS getWriter() {
+        if (writer == null) {
+            writer = PongApp.MessageWriterS.claim(playerId);
+
+            if (writer != null) {
+                writer.setConnectionNum(connection.getConnectionNum());
+
+                reader = writer.getReader();
+                if (reader != null) {
+                    reader.setConnectionNum(connection.getConnectionNum());
+                }
+            }
+        }
+        return writer;
+    }
+
+    synchronized PongApp.MessageReaderS getReader() {
+        getWriter();
+        return reader;
+    }
+
+    /**
+     * @return number of inbound messages dropped by the rate limiter
+     */
+    public long getRejectedMessages() {
+        var reader = getReader();
+        return reader == null ? 0 : reader.getRejected();
+    }
+
+    void requestKey(int index, boolean down) {
+        requestedKeys[index] = down;
+        keyRequests++;
+    }
+
+    /**
+     * @return 1 if the key should be pressed, -1 if released, 0 if unchanged since the last call
+     */
+    int takeKeyChange(int index) {
+        if (requestedKeys[index] == appliedKeys[index])
+            return 0;
+
+        appliedKeys[index] = requestedKeys[index];
+        keyChanges++;
+        return appliedKeys[index] ? 1 : -1;
+    }
+
+    /**
+     * @return applied keys as {@link LockstepSimulation} input bits
+     */
+    int getKeyInputBits() {
+        return (appliedKeys[0] ? LockstepSimulation.INPUT_NEGATIVE : 0) | (appliedKeys[1] ? LockstepSimulation.INPUT_POSITIVE : 0);
+    }
+
+    /**
+     * @return key presses and releases that were redundant or cancelled out within a tick
+     */
+    public long getCollapsedKeyRequests() {
+        return keyRequests - keyChanges;
+    }
+
+    Lobby.Ticket getTicket() {
+        return ticket.get();
+    }
+
+    boolean compareAndSetTicket(Lobby.Ticket expected, Lobby.Ticket newTicket) {
+        return ticket.compareAndSet(expected, newTicket);
+    }
+
+    public boolean isQueued() {
+        var current = ticket.get();
+        return current != null && current != Lobby.Ticket.PLACED;
+    }
+
+    /**
+     * @return true once the lobby has put this player in a room, which it keeps until it disconnects
+     */
+    public boolean isPlaced() {
+        return ticket.get() == Lobby.Ticket.PLACED;
+    }
+
+    /**
+     * @return the room this player is seated in, or null if in the lobby
+     */
+    public Room getRoom() {
+        return room;
+    }
+
+    /**
+     * @return seat index in the room, or -1 if in the lobby
+     */
+    public int getSeat() {
+        return seat;
+    }
+
+    void seat(Room room, int seat) {
+        this.room = room;
+        this.seat = seat;
+    }
+
+    /**
+     * Sends a ping stamped with the current server time, the client echoes it back in a pong.
+     */
+    void ping(long serverTime) {
+        connection.send(NetworkMessages.PING + "," + (pingSeq++) + "," + serverTime);
+    }
+
+    /**
+     * Updates RTT, jitter and clock offset from a pong.
+     *
+     * @param seq ping sequence number echoed by the client
+     * @param pingTime server time echoed by the client
+     * @param clientTime client clock when the pong was sent
+     * @param now server time when the pong was received
+     */
+    void onPong(int seq, long pingTime, long clientTime, long now) {
+        // pongs can overtake each other, only the newest one is useful
+        if (seq <= lastPongSeq)
+            return;
+
+        lastPongSeq = seq;
+
+        double sample = now - pingTime;
+
+        // assume the pong was sent half way through the round trip
+        double offset = clientTime - (pingTime + sample / 2);
+
+        if (rtt < 0) {
+            rtt = sample;
+            jitter = sample / 2;
+            clockOffset = offset;
+        } else {
+            // same smoothing factors as TCP's SRTT / RTTVAR
+            jitter += (Math.abs(sample - rtt) - jitter) / 4;
+            rtt += (sample - rtt) / 8;
+            clockOffset += (offset - clockOffset) / 8;
+        }
+    }
+
+    /**
+     * @return smoothed round trip time in milliseconds, or -1 if not measured yet
+     */
+    public double getRTT() {
+        return rtt;
+    }
+
+    /**
+     * @return mean deviation of the round trip time in milliseconds
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @return estimated client clock minus server clock in milliseconds
+     */
+    public double getClockOffset() {
+        return clockOffset;
+    }
+
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public long getSnapshotsDropped() {
+        return snapshotsDropped;
+    }
+
+    /**
+     * Called once per tick, decides whether this client gets the snapshot for the given tick.
+     * Distant clients get fewer snapshots, and clients that cannot keep up skip snapshots
+     * rather than receive stale ones late.
+     */
+    boolean shouldSendSnapshot(long tick) {
+        if (tick < nextSnapshotTick)
+            return false;
+
+        int targetInterval = rtt < 0 ? 1 : Math.min(1 + (int) (rtt / RTT_STEP_MS), MAX_SNAPSHOT_INTERVAL);
+
+        var writer = getWriter();
+        long backlog = writer == null ? 0 : snapshotsSent - writer.getSnapshotsWritten();
+
+        if (backlog >= MAX_SNAPSHOT_BACKLOG) {
+            // back off quickly while the connection is congested
+            snapshotInterval = Math.min(snapshotInterval * 2, MAX_SNAPSHOT_INTERVAL);
+        } else if (snapshotInterval > targetInterval) {
+            // and recover slowly
+            snapshotInterval--;
+        } else {
+            snapshotInterval = targetInterval;
+        }
+
+        nextSnapshotTick = tick + snapshotInterval;
+
+        if (backlog >= MAX_SNAPSHOT_BACKLOG) {
+            snapshotsDropped++;
+            return false;
+        }
+
+        snapshotsSent++;
+        return true;
+    }
+
+    public boolean isCompressed() {
+        var writer = getWriter();
+        return writer != null && writer.isCompressed();
+    }
+
+    /**
+     * @return compressed bytes / uncompressed bytes sent since compression was enabled, or 1 if not compressed
+     */
+    public double getCompressionRatio() {
+        var writer = getWriter();
+        if (writer == null || writer.getRawBytes() == 0)
+            return 1.0;
+
+        return (double) writer.getWireBytes() / writer.getRawBytes();
+    }
+
+    /**
+     * @return total time spent in the deflater for this connection, in milliseconds
+     */
+    public double getCompressionCPUMillis() {
+        var writer = getWriter();
+        return writer == null ? 0 : writer.getDeflateNanos() / 1_000_000.0;
+    }
+
+    public String getCompressionReport() {
+        if (!isCompressed())
+            return "Connection " + connection.getConnectionNum() + ": uncompressed";
+
+        var writer = getWriter();
+        return String.format("Connection %d: %d -> %d bytes (ratio %.2f), deflate %.1f ms",
+                connection.getConnectionNum(),
+                writer.getRawBytes(),
+                writer.getWireBytes(),
+                getCompressionRatio(),
+                getCompressionCPUMillis());
+    }
+}
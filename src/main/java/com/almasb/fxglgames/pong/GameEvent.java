@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+/**
+ * A gameplay event carried by {@link GameEventRing}.
+ * Instances are preallocated and reused, so consumers must copy what they need before the next poll.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public final class GameEvent {
+
+    public enum Type {
+        BALL_HIT_BAT, BALL_HIT_WALL, BALL_HIT_POWER_UP, SCORE
+    }
+
+    Type type;
+    long tick;
+
+    // player number 1-3 for BALL_HIT_BAT, 0 otherwise
+    int player;
+
+    // hit box name for BALL_HIT_WALL: LEFT, RIGHT, TOP or BOT
+    String wall;
+
+    // scores after a SCORE event
+    int player1Score;
+    int player2Score;
+    int player3Score;
+
+    void copyFrom(GameEvent other) {
+        type = other.type;
+        tick = other.tick;
+        player = other.player;
+        wall = other.wall;
+        player1Score = other.player1Score;
+        player2Score = other.player2Score;
+        player3Score = other.player3Score;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getPlayer() {
+        return player;
+    }
+
+    public String getWall() {
+        return wall;
+    }
+
+    public int getPlayer1Score() {
+        return player1Score;
+    }
+
+    public int getPlayer2Score() {
+        return player2Score;
+    }
+
+    public int getPlayer3Score() {
+        return player3Score;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer ring of preallocated {@link GameEvent}s.
+ * The game loop publishes without ever blocking or allocating, and each {@link Reader} follows at its own pace.
+ * A reader that falls more than a full ring behind skips the events it missed and counts them as dropped.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public final class GameEventRing {
+
+    private final GameEvent[] events;
+    private final int mask;
+
+    // sequence of the event being written and of the last event readable, -1 before the first event
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong published = new AtomicLong(-1);
+
+    /**
+     * @param capacity number of events kept, must be a power of two
+     */
+    public GameEventRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+
+        events = new GameEvent[capacity];
+        mask = capacity - 1;
+
+        for (int i = 0; i < capacity; i++) {
+            events[i] = new GameEvent();
+        }
+    }
+
+    /**
+     * Claims the next slot, producer thread only. Fill in the returned event and call {@link #publish()}.
+     */
+    GameEvent next(GameEvent.Type type, long tick) {
+        long seq = claimed.get() + 1;
+        claimed.set(seq);
+
+        // readers must see the claim before any of the writes below
+        VarHandle.storeStoreFence();
+
+        var event = events[(int) (seq & mask)];
+        event.type = type;
+        event.tick = tick;
+        event.player = 0;
+        event.wall = null;
+        return event;
+    }
+
+    /**
+     * Makes the event returned by the last {@link #next} call visible to readers.
+     */
+    void publish() {
+        published.set(claimed.get());
+    }
+
+    /**
+     * @return a reader that will see events published from now on
+     */
+    public Reader newReader() {
+        return new Reader(published.get() + 1);
+    }
+
+    public interface Handler {
+        void onEvent(GameEvent event);
+    }
+
+    public final class Reader {
+
+        private final GameEvent copy = new GameEvent();
+
+        private long next;
+        private long dropped = 0;
+
+        private Reader(long next) {
+            this.next = next;
+        }
+
+        /**
+         * Passes every event published since the last poll to the handler, on the calling thread.
+         * A reader must only be polled from one thread.
+         *
+         * @return number of events handled
+         */
+        public int poll(Handler handler) {
+            long last = published.get();
+            int count = 0;
+
+            while (next <= last) {
+                if (last - next >= events.length) {
+                    long skipTo = last - events.length + 1;
+                    dropped += skipTo - next;
+                    next = skipTo;
+                }
+
+                copy.copyFrom(events[(int) (next & mask)]);
+
+                // the copy is only valid if the producer has not started to reuse the slot meanwhile
+                VarHandle.loadLoadFence();
+                if (claimed.get() - next >= events.length) {
+                    dropped++;
+                    next++;
+                    continue;
+                }
+
+                next++;
+                count++;
+                handler.onEvent(copy);
+            }
+
+            return count;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+    }
+}
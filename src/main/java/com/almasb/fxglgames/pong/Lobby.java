@@ -0,0 +1,390 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Groups queued players into rooms by mode and skill band.
+ * Players are queued from network threads and rooms are started from the game loop,
+ * a single matchmaker thread sits in between, connected to both sides with lock-free queues.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public class Lobby {
+
+    public static final String DEFAULT_MODE = "DEFAULT";
+
+    private static final int SKILL_BAND = 100;
+
+    // skill is clamped to 0..MAX_SKILL, so each mode has a fixed number of skill bands
+    private static final int MAX_SKILL = 2999;
+
+    private final Set<String> modes;
+
+    private final long fillTimeoutNanos;
+
+    private final Map<String, Queue<Ticket>> queues = new ConcurrentHashMap<>();
+    private final Queue<Room> formedRooms = new ConcurrentLinkedQueue<>();
+
+    // rooms currently running on each simulation worker
+    private final AtomicIntegerArray workerLoad;
+    private final int roomsPerWorker;
+
+    private final AtomicInteger queuedPlayers = new AtomicInteger();
+    private final AtomicInteger nextRoomId = new AtomicInteger(1);
+    private final AtomicLong roomsFormed = new AtomicLong();
+    private final AtomicLong totalFormationNanos = new AtomicLong();
+    private final AtomicLong maxFormationNanos = new AtomicLong();
+
+    /**
+     * @param workers number of simulation workers rooms can be assigned to
+     * @param roomsPerWorker how many rooms each worker can run at once
+     * @param fillTimeout milliseconds a player waits for a full room before a partial room is formed
+     * @param modes modes players may queue for, DEFAULT_MODE is always allowed
+     */
+    public Lobby(int workers, int roomsPerWorker, long fillTimeout, Set<String> modes) {
+        this.modes = modes;
+        this.workerLoad = new AtomicIntegerArray(workers);
+        this.roomsPerWorker = roomsPerWorker;
+        this.fillTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(fillTimeout);
+    }
+
+    public void start() {
+        var t = new Thread(this::matchmakerLoop, "Matchmaker");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Queues the player, replacing any earlier ticket it had. Safe to call from any thread.
+     *
+     * @return false if the mode is unknown, in which case the player keeps its current ticket,
+     * or if the player is already in a room
+     */
+    public boolean enqueue(ClientSession session, String mode, int skill) {
+        if (!mode.equals(DEFAULT_MODE) && !modes.contains(mode))
+            return false;
+
+        int band = Math.max(0, Math.min(skill, MAX_SKILL)) / SKILL_BAND;
+
+        return offer(session, mode + "#" + band);
+    }
+
+    /**
+     * Queues a player that {@link PongGateway} has already grouped, players with the same match id share a room.
+     *
+     * @return false if the player is already in a room
+     */
+    public boolean enqueueMatch(ClientSession session, int matchId) {
+        return offer(session, "gateway:" + matchId);
+    }
+
+    private boolean offer(ClientSession session, String key) {
+        var ticket = new Ticket(session, System.nanoTime());
+
+        // swapped only while the player is not in a room, formRoom() may place it at any time
+        Ticket old;
+        do {
+            old = session.getTicket();
+            if (old == Ticket.PLACED)
+                return false;
+        } while (!session.compareAndSetTicket(old, ticket));
+
+        if (old != null)
+            old.cancel();
+
+        queuedPlayers.incrementAndGet();
+
+        // offered under the map's lock, so the matchmaker cannot drop the queue in between
+        queues.compute(key, (k, queue) -> {
+            if (queue == null) {
+                queue = new ConcurrentLinkedQueue<>();
+            }
+            queue.offer(ticket);
+            return queue;
+        });
+        return true;
+    }
+
+    /**
+     * Removes the player from the queue, e.g. on disconnect.
+     */
+    public void leave(ClientSession session) {
+        Ticket old;
+        do {
+            old = session.getTicket();
+            if (old == null || old == Ticket.PLACED)
+                return;
+        } while (!session.compareAndSetTicket(old, null));
+
+        old.cancel();
+    }
+
+    /**
+     * Takes the next formed room and assigns it to the least-loaded worker with spare capacity.
+     *
+     * @return the room or null if no room is waiting or all workers are full
+     */
+    public Room startNextRoom() {
+        int worker = leastLoadedWorker();
+        if (worker < 0)
+            return null;
+
+        Room room;
+        while ((room = formedRooms.poll()) != null) {
+            for (int i = 0; i < Room.SIZE; i++) {
+                var session = room.getSeat(i);
+                if (session != null && !session.getConnection().isConnected()) {
+                    room.leave(session);
+                }
+            }
+
+            if (!room.isEmpty())
+                break;
+        }
+
+        if (room == null)
+            return null;
+
+        workerLoad.incrementAndGet(worker);
+        room.setWorker(worker);
+        return room;
+    }
+
+    /**
+     * Moves players of waiting rooms formed from the same queue into free seats of a running room,
+     * so that a room started with fewer players does not keep later players in the lobby.
+     * Called from the game loop, like startNextRoom().
+     *
+     * @return number of players seated
+     */
+    public int backfill(Room room) {
+        int seated = 0;
+
+        for (var it = formedRooms.iterator(); it.hasNext(); ) {
+            var waiting = it.next();
+            if (!waiting.getKey().equals(room.getKey()))
+                continue;
+
+            for (int i = 0; i < Room.SIZE; i++) {
+                var session = waiting.getSeat(i);
+                if (session == null)
+                    continue;
+
+                if (session.getConnection().isConnected() && !room.contains(session)) {
+                    int seat = room.getFreeSeat();
+                    if (seat < 0)
+                        return seated;
+
+                    room.take(seat, session);
+                    seated++;
+                }
+
+                waiting.leave(session);
+            }
+
+            if (waiting.isEmpty()) {
+                it.remove();
+            }
+        }
+
+        return seated;
+    }
+
+    /**
+     * Frees the worker slot taken by given room.
+     */
+    public void release(Room room) {
+        if (room.getWorker() >= 0) {
+            workerLoad.decrementAndGet(room.getWorker());
+            room.setWorker(-1);
+        }
+    }
+
+    private int leastLoadedWorker() {
+        int best = -1;
+        int bestLoad = roomsPerWorker;
+
+        for (int i = 0; i < workerLoad.length(); i++) {
+            int load = workerLoad.get(i);
+            if (load < bestLoad) {
+                best = i;
+                bestLoad = load;
+            }
+        }
+
+        return best;
+    }
+
+    private void matchmakerLoop() {
+        // only touched by this thread
+        Map<String, List<Ticket>> staging = new HashMap<>();
+
+        while (true) {
+            long now = System.nanoTime();
+
+            queues.forEach((key, queue) -> {
+                var waiting = staging.computeIfAbsent(key, k -> new ArrayList<>());
+
+                Ticket ticket;
+                while ((ticket = queue.poll()) != null) {
+                    waiting.add(ticket);
+                }
+
+                waiting.removeIf(t -> {
+                    if (t.isLive())
+                        return false;
+
+                    queuedPlayers.decrementAndGet();
+                    return true;
+                });
+
+                while (waiting.size() >= Room.SIZE) {
+                    formRoom(key, waiting.subList(0, Room.SIZE), now);
+                }
+
+                if (!waiting.isEmpty() && now - waiting.get(0).enqueuedAt >= fillTimeoutNanos) {
+                    formRoom(key, waiting, now);
+                }
+
+                // drop queues nobody is waiting in
+                if (waiting.isEmpty() && queues.computeIfPresent(key, (k, q) -> q.isEmpty() ? null : q) == null) {
+                    staging.remove(key);
+                }
+            });
+
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+    }
+
+    /**
+     * Forms a room from given tickets and removes them from the list.
+     */
+    private void formRoom(String key, List<Ticket> tickets, long now) {
+        List<ClientSession> players = new ArrayList<>(tickets.size());
+        long latency = now - tickets.get(0).enqueuedAt;
+
+        for (var ticket : tickets) {
+            // the player may have re-queued since, in which case the old ticket loses
+            if (ticket.session.compareAndSetTicket(ticket, Ticket.PLACED)) {
+                players.add(ticket.session);
+            }
+            queuedPlayers.decrementAndGet();
+        }
+
+        tickets.clear();
+
+        if (players.isEmpty())
+            return;
+
+        roomsFormed.incrementAndGet();
+        totalFormationNanos.addAndGet(latency);
+        maxFormationNanos.accumulateAndGet(latency, Math::max);
+
+        formedRooms.offer(new Room(nextRoomId.getAndIncrement(), key, players, latency));
+    }
+
+    public int getQueuedPlayers() {
+        return queuedPlayers.get();
+    }
+
+    public int getWorkerCount() {
+        return workerLoad.length();
+    }
+
+    public int getWorkerLoad(int worker) {
+        return workerLoad.get(worker);
+    }
+
+    public int getActiveRooms() {
+        int rooms = 0;
+        for (int i = 0; i < workerLoad.length(); i++) {
+            rooms += workerLoad.get(i);
+        }
+        return rooms;
+    }
+
+    public long getRoomsFormed() {
+        return roomsFormed.get();
+    }
+
+    public double getAverageFormationMillis() {
+        long count = roomsFormed.get();
+        return count == 0 ? 0 : totalFormationNanos.get() / 1_000_000.0 / count;
+    }
+
+    public double getMaxFormationMillis() {
+        return maxFormationNanos.get() / 1_000_000.0;
+    }
+
+    public String getStatus() {
+        var loads = new StringBuilder();
+        for (int i = 0; i < workerLoad.length(); i++) {
+            loads.append(i == 0 ? "" : ",").append(workerLoad.get(i));
+        }
+
+        return String.format("Lobby: %d queued, %d rooms formed (avg %.1f ms, max %.1f ms), worker load [%s]",
+                getQueuedPlayers(), getRoomsFormed(), getAverageFormationMillis(), getMaxFormationMillis(), loads);
+    }
+
+    static final class Ticket {
+
+        // held by a player once it is in a formed room, so it cannot queue for another
+        static final Ticket PLACED = new Ticket(null, 0);
+
+        private final ClientSession session;
+        private final long enqueuedAt;
+        private volatile boolean cancelled = false;
+
+        Ticket(ClientSession session, long enqueuedAt) {
+            this.session = session;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isLive() {
+            return !cancelled && session.getConnection().isConnected();
+        }
+    }
+}
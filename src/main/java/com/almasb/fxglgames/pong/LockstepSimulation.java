@@ -0,0 +1,436 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+/**
+ * Deterministic fixed-step simulation of a room, used in lockstep mode.
+ * The server and every client run this same simulation from the same seed and the same per tick inputs,
+ * so only inputs have to travel over the network.
+ *
+ * To stay bit-for-bit identical on any platform it uses only integer arithmetic:
+ * positions and velocities are in 1/{@link #SCALE} pixels, velocities per tick, and one tick is 1/{@link #TICK_RATE} s.
+ * Randomness comes from a xorshift32 generator seeded by the server.
+ * Each tick applies, in order: bat movement, ball movement, wall bounces and scoring,
+ * bat bounces, the power up, then the ball speed limits.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public final class LockstepSimulation {
+
+    public static final int SCALE = 256;
+    public static final int TICK_RATE = 60;
+
+    // input bits per seat: towards 0 (up, or left for player3) and away from 0 (down, or right)
+    public static final int INPUT_NEGATIVE = 1;
+    public static final int INPUT_POSITIVE = 2;
+
+    // bits returned by step()
+    public static final int EVENT_WALL = 1;
+    public static final int EVENT_BAT = 2;
+    public static final int EVENT_SCORE = 4;
+    public static final int EVENT_POWER_UP = 8;
+
+    private static final int SEATS = 3;
+
+    // same values as BatComponent and BallComponent, per tick
+    private static final int BAT_SPEED = 7 * SCALE;
+    private static final int BALL_SPEED = 5 * SCALE;
+    private static final int BALL_SIZE = 10 * SCALE;
+    private static final int POWER_UP_SIZE = 40 * SCALE;
+    private static final int SLOW_DOWN_TICKS = 5 * TICK_RATE;
+
+    private final int width;
+    private final int height;
+
+    // starting layout in whole pixels, as sent to clients
+    private final int[] layout;
+
+    private int rng;
+    private long tick = 0;
+
+    private int ballX, ballY, ballVelocityX, ballVelocityY;
+
+    private final int[] batX = new int[SEATS];
+    private final int[] batY = new int[SEATS];
+    private final int[] batWidth = new int[SEATS];
+    private final int[] batHeight = new int[SEATS];
+    private final int[] input = new int[SEATS];
+    private final int[] scores = new int[SEATS];
+
+    private int lastBatHit = -1;
+
+    // seat that scored in the last step, not part of the state
+    private int lastScorer = -1;
+
+    private boolean powerUpActive = true;
+    private int powerUpX, powerUpY;
+    private int slowDownTicks = 0;
+
+    /**
+     * Positions are top left corners in whole pixels, as spawned in PongApp.
+     */
+    public LockstepSimulation(int seed, int width, int height,
+                              int ballX, int ballY,
+                              int[] batX, int[] batY, int[] batWidth, int[] batHeight,
+                              int powerUpX, int powerUpY) {
+        layout = new int[6 + 4 * SEATS];
+        layout[0] = width;
+        layout[1] = height;
+        layout[2] = ballX;
+        layout[3] = ballY;
+        for (int i = 0; i < SEATS; i++) {
+            layout[4 + 4 * i] = batX[i];
+            layout[5 + 4 * i] = batY[i];
+            layout[6 + 4 * i] = batWidth[i];
+            layout[7 + 4 * i] = batHeight[i];
+        }
+        layout[4 + 4 * SEATS] = powerUpX;
+        layout[5 + 4 * SEATS] = powerUpY;
+
+        this.rng = seed == 0 ? 1 : seed;
+        this.width = width * SCALE;
+        this.height = height * SCALE;
+
+        this.ballX = ballX * SCALE;
+        this.ballY = ballY * SCALE;
+
+        for (int i = 0; i < SEATS; i++) {
+            this.batX[i] = batX[i] * SCALE;
+            this.batY[i] = batY[i] * SCALE;
+            this.batWidth[i] = batWidth[i] * SCALE;
+            this.batHeight[i] = batHeight[i] * SCALE;
+        }
+
+        this.powerUpX = powerUpX * SCALE;
+        this.powerUpY = powerUpY * SCALE;
+
+        ballVelocityX = (nextRandom() & 1) == 0 ? BALL_SPEED : -BALL_SPEED;
+        ballVelocityY = (nextRandom() & 1) == 0 ? BALL_SPEED : -BALL_SPEED;
+    }
+
+    /**
+     * Creates the simulation a client is told about in the LOCKSTEP message.
+     *
+     * @param layout as returned by {@link #getLayout()}
+     */
+    public static LockstepSimulation fromLayout(int seed, String layout) {
+        var tokens = layout.split(",");
+        if (tokens.length != 6 + 4 * SEATS)
+            throw new IllegalArgumentException("Expected " + (6 + 4 * SEATS) + " layout values, got: " + layout);
+
+        int[] values = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            values[i] = Integer.parseInt(tokens[i].trim());
+        }
+
+        int[] batX = new int[SEATS];
+        int[] batY = new int[SEATS];
+        int[] batWidth = new int[SEATS];
+        int[] batHeight = new int[SEATS];
+        for (int i = 0; i < SEATS; i++) {
+            batX[i] = values[4 + 4 * i];
+            batY[i] = values[5 + 4 * i];
+            batWidth[i] = values[6 + 4 * i];
+            batHeight[i] = values[7 + 4 * i];
+        }
+
+        return new LockstepSimulation(seed, values[0], values[1], values[2], values[3],
+                batX, batY, batWidth, batHeight, values[4 + 4 * SEATS], values[5 + 4 * SEATS]);
+    }
+
+    /**
+     * @return starting layout in whole pixels: width,height,ballX,ballY, then x,y,width,height of each bat, then powerUpX,powerUpY
+     */
+    public String getLayout() {
+        var sb = new StringBuilder();
+        for (int i = 0; i < layout.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(layout[i]);
+        }
+        return sb.toString();
+    }
+
+    private int nextRandom() {
+        rng ^= rng << 13;
+        rng ^= rng >>> 17;
+        rng ^= rng << 5;
+        return rng;
+    }
+
+    /**
+     * Sets the input bits a seat holds from the next tick on.
+     */
+    public void setInput(int seat, int bits) {
+        input[seat] = bits;
+    }
+
+    public int getInput(int seat) {
+        return input[seat];
+    }
+
+    /**
+     * Advances the simulation by one tick.
+     *
+     * @return EVENT_* bits for what happened during the tick
+     */
+    public int step() {
+        int events = 0;
+        lastScorer = -1;
+
+        tick++;
+
+        for (int i = 0; i < SEATS; i++) {
+            moveBat(i);
+        }
+
+        ballX += ballVelocityX;
+        ballY += ballVelocityY;
+
+        events |= bounceOffWalls();
+
+        for (int i = 0; i < SEATS; i++) {
+            if (bounceOffBat(i)) {
+                lastBatHit = i;
+                events |= EVENT_BAT;
+            }
+        }
+
+        if (powerUpActive && overlaps(powerUpX, powerUpY, POWER_UP_SIZE, POWER_UP_SIZE)) {
+            powerUpActive = false;
+            events |= EVENT_POWER_UP;
+
+            if (slowDownTicks == 0) {
+                ballVelocityX /= 4;
+                ballVelocityY /= 4;
+                slowDownTicks = SLOW_DOWN_TICKS;
+            }
+        }
+
+        if (slowDownTicks > 0) {
+            slowDownTicks--;
+        } else {
+            limitVelocity();
+        }
+
+        return events;
+    }
+
+    private void moveBat(int i) {
+        boolean vertical = i != 2;
+
+        if ((input[i] & INPUT_NEGATIVE) != 0) {
+            if (vertical && batY[i] >= BAT_SPEED)
+                batY[i] -= BAT_SPEED;
+            else if (!vertical && batX[i] > 0)
+                batX[i] -= BAT_SPEED;
+        } else if ((input[i] & INPUT_POSITIVE) != 0) {
+            if (vertical && batY[i] + batHeight[i] <= height - BAT_SPEED)
+                batY[i] += BAT_SPEED;
+            else if (!vertical && batX[i] + batWidth[i] < width)
+                batX[i] += BAT_SPEED;
+        }
+    }
+
+    private int bounceOffWalls() {
+        boolean hit = false;
+
+        if (ballX < 0) {
+            ballX = -ballX;
+            ballVelocityX = -ballVelocityX;
+            hit = true;
+        } else if (ballX + BALL_SIZE > width) {
+            ballX = 2 * (width - BALL_SIZE) - ballX;
+            ballVelocityX = -ballVelocityX;
+            hit = true;
+        }
+
+        if (ballY < 0) {
+            ballY = -ballY;
+            ballVelocityY = -ballVelocityY;
+            hit = true;
+        } else if (ballY + BALL_SIZE > height) {
+            ballY = 2 * (height - BALL_SIZE) - ballY;
+            ballVelocityY = -ballVelocityY;
+            hit = true;
+        }
+
+        if (!hit)
+            return 0;
+
+        // the last player to touch the ball scores when it hits a wall, as in PongApp
+        if (lastBatHit >= 0) {
+            scores[lastBatHit]++;
+            lastScorer = lastBatHit;
+            lastBatHit = -1;
+            return EVENT_WALL | EVENT_SCORE;
+        }
+
+        return EVENT_WALL;
+    }
+
+    private boolean bounceOffBat(int i) {
+        if (!overlaps(batX[i], batY[i], batWidth[i], batHeight[i]))
+            return false;
+
+        if (i != 2) {
+            int ballCentre = ballX + BALL_SIZE / 2;
+            int batCentre = batX[i] + batWidth[i] / 2;
+
+            if (ballCentre < batCentre && ballVelocityX > 0) {
+                ballX = batX[i] - BALL_SIZE;
+                ballVelocityX = -ballVelocityX;
+                return true;
+            }
+
+            if (ballCentre >= batCentre && ballVelocityX < 0) {
+                ballX = batX[i] + batWidth[i];
+                ballVelocityX = -ballVelocityX;
+                return true;
+            }
+        } else {
+            int ballCentre = ballY + BALL_SIZE / 2;
+            int batCentre = batY[i] + batHeight[i] / 2;
+
+            if (ballCentre < batCentre && ballVelocityY > 0) {
+                ballY = batY[i] - BALL_SIZE;
+                ballVelocityY = -ballVelocityY;
+                return true;
+            }
+
+            if (ballCentre >= batCentre && ballVelocityY < 0) {
+                ballY = batY[i] + batHeight[i];
+                ballVelocityY = -ballVelocityY;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean overlaps(int x, int y, int w, int h) {
+        return ballX < x + w && ballX + BALL_SIZE > x && ballY < y + h && ballY + BALL_SIZE > y;
+    }
+
+    // same rules as BallComponent.limitVelocity
+    private void limitVelocity() {
+        if (Math.abs(ballVelocityX) < BALL_SPEED) {
+            ballVelocityX = ballVelocityX < 0 ? -BALL_SPEED : BALL_SPEED;
+        }
+
+        if (Math.abs(ballVelocityY) > 2 * BALL_SPEED) {
+            ballVelocityY = ballVelocityY < 0 ? -BALL_SPEED : BALL_SPEED;
+        }
+    }
+
+    /**
+     * FNV-1a over the whole state, compared with the clients' to detect desyncs.
+     */
+    public long checksum() {
+        long hash = 0xcbf29ce484222325L;
+
+        hash = mix(hash, (int) tick);
+        hash = mix(hash, rng);
+        hash = mix(hash, ballX);
+        hash = mix(hash, ballY);
+        hash = mix(hash, ballVelocityX);
+        hash = mix(hash, ballVelocityY);
+
+        for (int i = 0; i < SEATS; i++) {
+            hash = mix(hash, batX[i]);
+            hash = mix(hash, batY[i]);
+            hash = mix(hash, scores[i]);
+        }
+
+        hash = mix(hash, lastBatHit);
+        hash = mix(hash, powerUpActive ? 1 : 0);
+        hash = mix(hash, slowDownTicks);
+
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        for (int i = 0; i < 4; i++) {
+            hash ^= (value >>> (8 * i)) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return seat that scored in the last step, -1 if none
+     */
+    public int getLastScorer() {
+        return lastScorer;
+    }
+
+    /**
+     * @return seat of the last bat to touch the ball, the one hit in the last step if EVENT_BAT was returned,
+     * -1 if none since the last score
+     */
+    public int getLastBatHit() {
+        return lastBatHit;
+    }
+
+    public double getBallX() {
+        return (double) ballX / SCALE;
+    }
+
+    public double getBallY() {
+        return (double) ballY / SCALE;
+    }
+
+    /**
+     * @return ball velocity in pixels per second
+     */
+    public double getBallVelocityX() {
+        return (double) ballVelocityX * TICK_RATE / SCALE;
+    }
+
+    public double getBallVelocityY() {
+        return (double) ballVelocityY * TICK_RATE / SCALE;
+    }
+
+    public double getBatX(int seat) {
+        return (double) batX[seat] / SCALE;
+    }
+
+    public double getBatY(int seat) {
+        return (double) batY[seat] / SCALE;
+    }
+
+    public int getScore(int seat) {
+        return scores[seat];
+    }
+
+    public boolean isPowerUpActive() {
+        return powerUpActive;
+    }
+}
@@ -17,4 +17,36 @@ public class NetworkMessages {
 
     public static final String BALL_HIT_powerUp = "BALL_HIT_powerUp";
 
+    // lobby: server sends LOBBY,QUEUED on connect and ROOM,roomId,playerNumber when the match starts,
+    // clients may send QUEUE,mode,skill while waiting
+    public static final String LOBBY_QUEUED = "LOBBY,QUEUED";
+    public static final String QUEUE = "QUEUE";
+    public static final String ROOM = "ROOM";
+
+    // server sends PING,seq,serverTime and the client replies PONG,seq,serverTime,clientTime
+    public static final String PING = "PING";
+    public static final String PONG = "PONG";
+
+    // compression handshake: server offers after PLAYER_ID, client accepts,
+    // server confirms with COMPRESSION_ON and every byte after it is a zlib stream
+    public static final String COMPRESSION = "COMPRESSION";
+    public static final String COMPRESSION_OFFER = COMPRESSION + ",DEFLATE";
+    public static final String COMPRESSION_ACCEPT = "ACCEPT";
+    public static final String COMPRESSION_ON = COMPRESSION + ",ON";
+
+    // first line PongGateway sends on each spliced connection, MATCH,matchId followed by a newline
+    public static final String MATCH = "MATCH";
+
+    // lockstep mode: LOCKSTEP,seed,tickRate,checksumInterval,layout after ROOM, then INPUT,tick[,seat:bits]... every tick
+    // and CHECKSUM,tick,hex every checksumInterval ticks, see LockstepSimulation
+    public static final String LOCKSTEP = "LOCKSTEP";
+    public static final String INPUT = "INPUT";
+    public static final String CHECKSUM = "CHECKSUM";
+
+    /**
+     * Preset dictionary for the zlib stream, clients must pass the same bytes to inflateSetDictionary().
+     */
+    public static final String COMPRESSION_DICTIONARY = "BALL_HIT_powerUpBALL_HIT_BAT3BALL_HIT_BAT2BALL_HIT_BAT1"
+            + "HIT_WALL_SCORES,0,0,00,0,0GAME_DATA,0123456789.0";
+
 }
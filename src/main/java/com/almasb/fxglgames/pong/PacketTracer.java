@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records inbound and outbound messages into a fixed-size off-heap ring, overwriting the oldest records.
+ * Recording costs a few buffer writes and no allocation, and nothing at all while disabled.
+ * The ring is written to a text file on demand with {@link #dump(String)}.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public final class PacketTracer {
+
+    // record layout: seq + 1 (0 = never written), time, connection, size, direction, message type
+    private static final int RECORD_SIZE = 48;
+    private static final int SEQ = 0;
+    private static final int TIME = 8;
+    private static final int CONNECTION = 16;
+    private static final int SIZE = 20;
+    private static final int DIRECTION = 24;
+    private static final int TYPE = 32;
+
+    // long enough for every type in NetworkMessages, e.g. BALL_HIT_powerUp
+    private static final int TYPE_CHARS = 16;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final AtomicLong nextSeq = new AtomicLong();
+
+    private volatile boolean enabled;
+
+    /**
+     * @param capacity number of records kept
+     */
+    public PacketTracer(int capacity, boolean enabled) {
+        this.capacity = capacity;
+        this.enabled = enabled;
+        buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void recordInbound(int connection, String message) {
+        if (enabled) {
+            record(connection, 0, message);
+        }
+    }
+
+    public void recordOutbound(int connection, String message) {
+        if (enabled) {
+            record(connection, 1, message);
+        }
+    }
+
+    private void record(int connection, int direction, String message) {
+        long seq = nextSeq.getAndIncrement();
+        int offset = (int) (seq % capacity) * RECORD_SIZE;
+
+        // mark the record as being written, so a concurrent dump skips it
+        buffer.putLong(offset + SEQ, 0);
+
+        buffer.putLong(offset + TIME, System.currentTimeMillis());
+        buffer.putInt(offset + CONNECTION, connection);
+        buffer.putInt(offset + SIZE, message.length());
+        buffer.putInt(offset + DIRECTION, direction);
+
+        // messages are ASCII, keep the type up to the first comma, one char per byte and zero padded
+        boolean ended = false;
+        for (int i = 0; i < TYPE_CHARS; i++) {
+            char c = i < message.length() ? message.charAt(i) : ',';
+            ended |= c == ',';
+            buffer.put(offset + TYPE + i, ended ? 0 : (byte) (c & 0x7F));
+        }
+
+        buffer.putLong(offset + SEQ, seq + 1);
+    }
+
+    /**
+     * Writes the ring, oldest record first, to a new file in given directory.
+     * The records are copied first, so recording continues while the file is written.
+     *
+     * @return the file written
+     */
+    public Path dump(String directory) throws IOException {
+        var copy = ByteBuffer.allocate(buffer.capacity());
+        copy.put(buffer.duplicate().clear());
+
+        long end = nextSeq.get();
+        long start = Math.max(0, end - capacity);
+
+        Path file = Paths.get(directory, "pong-trace-" + System.currentTimeMillis() + ".txt");
+
+        try (var out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("# time_ms connection direction size type");
+
+            for (long seq = start; seq < end; seq++) {
+                int offset = (int) (seq % capacity) * RECORD_SIZE;
+
+                // skip records that were overwritten or still being written when copied
+                if (copy.getLong(offset + SEQ) != seq + 1)
+                    continue;
+
+                out.println(copy.getLong(offset + TIME)
+                        + " " + copy.getInt(offset + CONNECTION)
+                        + " " + (copy.getInt(offset + DIRECTION) == 0 ? "IN" : "OUT")
+                        + " " + copy.getInt(offset + SIZE)
+                        + " " + decodeType(copy, offset + TYPE));
+            }
+        }
+
+        return file;
+    }
+
+    /**
+     * Same as {@link #dump(String)} but on a background thread, printing the result.
+     */
+    public void dumpAsync(String directory) {
+        var t = new Thread(() -> {
+            try {
+                System.out.println("Packet trace written to " + dump(directory));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "PacketTracerDump");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static String decodeType(ByteBuffer records, int offset) {
+        var sb = new StringBuilder(TYPE_CHARS);
+        for (int i = 0; i < TYPE_CHARS; i++) {
+            char c = (char) records.get(offset + i);
+            if (c == 0)
+                break;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
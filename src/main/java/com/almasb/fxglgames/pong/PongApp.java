@@ -37,23 +37,36 @@ import com.almasb.fxgl.input.UserAction;
 import com.almasb.fxgl.net.*;
 import com.almasb.fxgl.physics.CollisionHandler;
 import com.almasb.fxgl.physics.HitBox;
+import com.almasb.fxgl.physics.PhysicsComponent;
 import com.almasb.fxgl.ui.UI;
 import com.almasb.fxglgames.pong.PongApp.MessageReaderS;
 import com.almasb.fxglgames.pong.PongApp.MessageWriterS;
 
+import javafx.geometry.Point2D;
 import javafx.scene.input.KeyCode;
 import javafx.scene.paint.Color;
 import javafx.util.Duration;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
 
 import static com.almasb.fxgl.dsl.FXGL.*;
 import static com.almasb.fxglgames.pong.NetworkMessages.*;
@@ -66,6 +79,94 @@ import static com.almasb.fxglgames.pong.NetworkMessages.*;
  */
 public class PongApp extends GameApplication implements MessageHandler<String> {
 
+    static final int COMPRESSION_OFF = -1;
+
+    /**
+     * In observer mode the server window does not draw the match, watch it with {@link SnapshotObserver} instead.
+     */
+    static final boolean OBSERVER_MODE = Boolean.getBoolean("pong.observer");
+
+    /**
+     * In lockstep mode the match runs on {@link LockstepSimulation} and rooms are sent inputs instead of world state.
+     */
+    static final boolean LOCKSTEP_MODE = "lockstep".equals(System.getProperty("pong.mode", "snapshot"));
+
+    /**
+     * Lockstep ticks between CHECKSUM messages.
+     */
+    private static final int CHECKSUM_INTERVAL = Integer.getInteger("pong.lockstep.checksumInterval", 60);
+
+    private static final int PORT = Integer.getInteger("pong.port", 55555);
+
+    /**
+     * Wire-level trace of all messages, enabled with -Dpong.trace=true or F9 and dumped with F10.
+     */
+    static final PacketTracer TRACER = new PacketTracer(Integer.getInteger("pong.trace.size", 65536), Boolean.getBoolean("pong.trace"));
+
+    /**
+     * Loopback port answering LOAD,connections,queued,rooms for {@link PongGateway}, disabled if not set.
+     */
+    private static final int STATUS_PORT = Integer.getInteger("pong.statusPort", -1);
+
+    // with a status port the server is a gateway backend, and the gateway decides who plays together
+    private static final boolean BEHIND_GATEWAY = STATUS_PORT > 0;
+
+    private static final long START_NANOS = System.nanoTime();
+
+    /**
+     * Deflate level used for clients that accept compression, set with -Dpong.compression=off|fast|best|0-9.
+     */
+    static final int COMPRESSION_LEVEL = compressionLevel(System.getProperty("pong.compression", "off"));
+
+    /**
+     * Milliseconds a queued player waits for a full room before playing with fewer players.
+     */
+    private static final long LOBBY_FILL_TIMEOUT = Long.getLong("pong.lobby.fillTimeout", 3000);
+
+    /**
+     * Modes clients may ask for with QUEUE, comma separated. DEFAULT is always allowed.
+     */
+    private static final Set<String> LOBBY_MODES = Set.of(System.getProperty("pong.lobby.modes", Lobby.DEFAULT_MODE).split(","));
+
+    /**
+     * Directory where each room's state is published for local readers, disabled if not set.
+     */
+    private static final String SNAPSHOT_DIR = System.getProperty("pong.snapshot.dir", OBSERVER_MODE ? "." : null);
+
+    // a finished room's file is kept this long so that observers can see the room end
+    private static final double SNAPSHOT_GRACE_SECONDS = 10;
+
+    /**
+     * Ticks the match runs, and the codec warm-up iterations done, before the port opens.
+     */
+    private static final int WARMUP_TICKS = Integer.getInteger("pong.warmup.ticks", 120);
+    private static final int WARMUP_ITERATIONS = Integer.getInteger("pong.warmup.iterations", 20000);
+
+    /**
+     * Training run for the class data sharing archive: warm up, serve for a while, then exit.
+     */
+    private static final boolean TRAINING = Boolean.getBoolean("pong.training");
+    private static final int TRAINING_SECONDS = Integer.getInteger("pong.training.seconds", 20);
+
+    /**
+     * Controls bats of empty seats: predict (default), follow or off.
+     */
+    private static final AiPolicy AI_POLICY = AiPolicy.forName(System.getProperty("pong.ai", "predict"));
+
+    // per connection input limits, see README
+    private static final double INPUT_MESSAGES_PER_SECOND = Double.parseDouble(System.getProperty("pong.input.messagesPerSecond", "120"));
+    private static final double INPUT_MESSAGE_BURST = Double.parseDouble(System.getProperty("pong.input.messageBurst", "60"));
+    private static final double INPUT_BYTES_PER_SECOND = Double.parseDouble(System.getProperty("pong.input.bytesPerSecond", "4096"));
+    private static final double INPUT_BYTE_BURST = Double.parseDouble(System.getProperty("pong.input.byteBurst", "2048"));
+    private static final int INPUT_MAX_REJECTED_PER_SECOND = Integer.getInteger("pong.input.maxRejectedPerSecond", 100);
+
+    // keys each seat of a room may press: player1, player2, player3
+    private static final KeyCode[][] SEAT_KEYS = {
+            { KeyCode.W, KeyCode.S },
+            { KeyCode.I, KeyCode.K },
+            { KeyCode.F, KeyCode.G }
+    };
+
     @Override
     protected void initSettings(GameSettings settings) {
         settings.setTitle("Pong");
@@ -84,9 +185,49 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
     private BatComponent player3Bat;
     private boolean powerUpActive;
 
+    // bats indexed by room seat
+    private Entity[] seatBats;
+    private BatComponent[] seatBatComponents;
+
+    private AiBatch aiBatch = new AiBatch(Room.SIZE);
+
+    // lockstep mode only, inputs are indexed by room seat and applied on the next simulation tick
+    private LockstepSimulation lockstep;
+    private double lockstepTime = 0;
+    private int[] lockstepInputs = new int[Room.SIZE];
+
 
     private Server<String> server;
 
+    private long tick = 0;
+
+    private volatile boolean warmupDone = false;
+    private boolean serverStarted = false;
+
+    private PongEvents.Tick tickEvent;
+
+    private Snapshot snapshot = new Snapshot();
+    private SnapshotExporter snapshotExporter;
+
+    // the game world holds a single match, so this process is one worker running one room at a time
+    private Lobby lobby = new Lobby(1, 1, LOBBY_FILL_TIMEOUT, LOBBY_MODES);
+    private volatile Room liveRoom;
+
+    // collision and score events, published from physics callbacks
+    private GameEventRing events = new GameEventRing(1024);
+    private GameEventRing.Reader uiEvents = events.newReader();
+    private GameEventRing.Reader networkEvents = events.newReader();
+    private GameEventRing.Reader statsEvents = events.newReader();
+    private long[] eventCounts = new long[GameEvent.Type.values().length];
+
+    // scores by seat, changed by the game loop only; the score game vars follow them through uiEvents
+    private int[] scores = new int[Room.SIZE];
+
+    private Map<Connection<String>, ClientSession> sessions = new ConcurrentHashMap<>();
+
+    // FXGL creates a socket's writer and then its reader on the accept thread, the reader is paired with the writer here
+    private ThreadLocal<MessageWriterS> acceptedWriter = new ThreadLocal<>();
+
     @Override
     protected void initInput() {
         getInput().addAction(new UserAction("Up1") {
@@ -161,7 +302,20 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
             }
         }, KeyCode.G);
 
+        getInput().addAction(new UserAction("Toggle Packet Trace") {
+            @Override
+            protected void onActionBegin() {
+                TRACER.setEnabled(!TRACER.isEnabled());
+                System.out.println("Packet trace " + (TRACER.isEnabled() ? "enabled" : "disabled"));
+            }
+        }, KeyCode.F9);
 
+        getInput().addAction(new UserAction("Dump Packet Trace") {
+            @Override
+            protected void onActionBegin() {
+                TRACER.dumpAsync(".");
+            }
+        }, KeyCode.F10);
     }
 
     @Override
@@ -175,29 +329,139 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
 
     @Override
     protected void initGame() {
-        Writers.INSTANCE.addTCPWriter(String.class, outputStream -> new MessageWriterS(outputStream));
-        Readers.INSTANCE.addTCPReader(String.class, in -> new MessageReaderS(in));
+        Writers.INSTANCE.addTCPWriter(String.class, outputStream -> {
+            var writer = new MessageWriterS(outputStream, COMPRESSION_LEVEL, TRACER);
+            acceptedWriter.set(writer);
+            return writer;
+        });
+        Readers.INSTANCE.addTCPReader(String.class, in -> {
+            var reader = new MessageReaderS(in, TRACER,
+                    new TokenBucket(INPUT_MESSAGES_PER_SECOND, INPUT_MESSAGE_BURST), new TokenBucket(INPUT_BYTES_PER_SECOND, INPUT_BYTE_BURST));
+            var writer = acceptedWriter.get();
+            acceptedWriter.remove();
+
+            if (writer != null) {
+                writer.setReader(reader);
+            }
+            return reader;
+        });
 
-        server = getNetService().newTCPServer(55555, new ServerConfig<>(String.class));
+        server = getNetService().newTCPServer(PORT, new ServerConfig<>(String.class));
 
         server.setOnConnected(connection -> {
-            connection.addMessageHandlerFX(this);
             // When a new client connects
              UUID playerId = UUID.randomUUID(); // Assign a unique ID
+             // the session finds its writer and reader through the PLAYER_ID message, see MessageWriterS
+             var session = new ClientSession(connection, playerId.toString());
+
+             // registered before the handler, so a MATCH line read straight away finds its session
+             sessions.put(connection, session);
+             connection.addMessageHandlerFX(this);
              connection.send("PLAYER_ID," + playerId.toString()); // Send ID to client
+
+             if (COMPRESSION_LEVEL != COMPRESSION_OFF) {
+                 connection.send(COMPRESSION_OFFER);
+             }
+
+             // behind a gateway the player is queued once the gateway's MATCH line arrives
+             if (!BEHIND_GATEWAY) {
+                 lobby.enqueue(session, Lobby.DEFAULT_MODE, 0);
+                 connection.send(LOBBY_QUEUED);
+             }
+        });
+
+        server.setOnDisconnected(connection -> {
+            var session = sessions.remove(connection);
+            if (session != null) {
+                // seated players are removed from their room by the game loop
+                lobby.leave(session);
+
+                if (session.isCompressed()) {
+                    System.out.println(session.getCompressionReport());
+                }
+
+                if (session.getRejectedMessages() > 0) {
+                    System.out.println("Connection " + connection.getConnectionNum() + ": " + session.getRejectedMessages() + " messages rejected");
+                }
+
+                if (session.getWriter() != null) {
+                    session.getWriter().close();
+                }
+            }
         });
 
+        getGameTimer().runAtInterval(() -> {
+            System.out.println(lobby.getStatus());
+            System.out.println("Input: " + MessageReaderS.TOTAL_REJECTED.sum() + " messages rejected, "
+                    + MessageReaderS.TOTAL_DISCONNECTED.sum() + " connections dropped for flooding");
+        }, Duration.seconds(30));
+
+        getGameTimer().runAtInterval(() -> {
+            statsEvents.poll(event -> eventCounts[event.getType().ordinal()]++);
+
+            System.out.println("Events: " + Arrays.toString(GameEvent.Type.values()) + " " + Arrays.toString(eventCounts)
+                    + ", dropped ui " + uiEvents.getDropped() + " network " + networkEvents.getDropped() + " stats " + statsEvents.getDropped());
+        }, Duration.seconds(30));
+
+        getGameTimer().runAtInterval(() -> {
+            long now = serverTime();
+            sessions.values().forEach(session -> session.ping(now));
+        }, Duration.seconds(1));
+
+        if (COMPRESSION_LEVEL != COMPRESSION_OFF) {
+            getGameTimer().runAtInterval(() -> {
+                sessions.values().stream()
+                        .filter(ClientSession::isCompressed)
+                        .forEach(session -> System.out.println(session.getCompressionReport()));
+            }, Duration.seconds(30));
+        }
+
         getGameWorld().addEntityFactory(new PongFactory());
         getGameScene().setBackgroundColor(Color.rgb(0, 0, 5));
 
         initScreenBounds();
         initGameObjects();
 
+        deleteStaleSnapshotFiles();
+
+        lobby.start();
+
+        var eventThread = new Thread(this::sendEventsLoop, "GameEventNetwork");
+        eventThread.setDaemon(true);
+        eventThread.start();
+
+        // the port opens from onUpdate once the match and the codecs are warm
+        var warmup = new Thread(() -> {
+            try {
+                long start = System.nanoTime();
+                long result = Warmup.run(WARMUP_ITERATIONS);
+                System.out.println("Warm-up done in " + (System.nanoTime() - start) / 1_000_000 + " ms, result " + result);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            warmupDone = true;
+        }, "Warmup");
+        warmup.setDaemon(true);
+        warmup.start();
+    }
+
+    private void startServer() {
+        serverStarted = true;
+
         var t = new Thread(server.startTask()::run);
         t.setDaemon(true);
         t.start();
 
-     
+        System.out.println("Listening on port " + PORT + " after " + tick + " warm-up ticks");
+
+        // the gateway treats a backend that answers on its status port as ready for players
+        if (STATUS_PORT > 0) {
+            new LoadReporter(STATUS_PORT, () -> "LOAD," + sessions.size() + "," + lobby.getQueuedPlayers() + "," + lobby.getActiveRooms()).start();
+        }
+
+        if (TRAINING) {
+            getGameTimer().runOnceAfter(() -> getGameController().exit(), Duration.seconds(TRAINING_SECONDS));
+        }
     }
 
 
@@ -209,35 +473,45 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
         getPhysicsWorld().addCollisionHandler(new CollisionHandler(EntityType.BALL, EntityType.WALL) {
             @Override
             protected void onHitBoxTrigger(Entity ball, Entity wall, HitBox boxA, HitBox boxB) {
+                // in lockstep mode collisions are resolved by LockstepSimulation
+                if (LOCKSTEP_MODE)
+                    return;
+
+                var collision = new PongEvents.Collision();
+                collision.begin();
+
                 BallComponent ballComp = ball.getComponent(BallComponent.class);
                 Entity lastBatHit = ballComp.getLastBatHit();
         
                 if (lastBatHit != null) {
                     // Check which player's bat it was and increment their score
                     if (lastBatHit == player1) {
-                        inc("player1score", +1);
+                        scores[0]++;
                     } else if (lastBatHit == player2) {
-                        inc("player2score", +1);
+                        scores[1]++;
                     } else if (lastBatHit == player3) {
-                        inc("player3score", +1);
+                        scores[2]++;
                     }
                     //System.out.println("Ball hit the wall. Last bat hit: " + (lastBatHit == player1 ? "Player 1" : lastBatHit == player2 ? "Player 2" : "Player 3"));
-        
-                    // Broadcast updated scores
-                    server.broadcast("SCORES," + geti("player1score") + "," + geti("player2score") + "," + geti("player3score"));
+
+                    // network and UI, including the score game vars, react to these events outside of the physics step
+                    var event = events.next(GameEvent.Type.SCORE, tick);
+                    event.player1Score = scores[0];
+                    event.player2Score = scores[1];
+                    event.player3Score = scores[2];
+                    events.publish();
         
                     // Reset last bat hit
                     ballComp.setLastBatHit(null);
                 }
-        
-                if (boxB.getName().equals("LEFT") || boxB.getName().equals("RIGHT")) {
-                   
-                } else if (boxB.getName().equals("TOP") || boxB.getName().equals("BOT")) {
-                  
-                }
-        
-                // Additional effects, like screen shake
-                getGameScene().getViewport().shakeTranslational(5);
+
+                var event = events.next(GameEvent.Type.BALL_HIT_WALL, tick);
+                event.wall = boxB.getName();
+                events.publish();
+
+                collision.room = PongEvents.currentRoom;
+                collision.kind = "WALL";
+                collision.commit();
             }
         });
         
@@ -247,16 +521,26 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
        CollisionHandler ballBatHandler = new CollisionHandler(EntityType.BALL, EntityType.PLAYER_BAT) {
     @Override
     protected void onCollisionBegin(Entity ball, Entity bat) {
+        if (LOCKSTEP_MODE)
+            return;
+
+        var collision = new PongEvents.Collision();
+        collision.begin();
+
         BallComponent ballComp = ball.getComponent(BallComponent.class);
         ballComp.setLastBatHit(bat);
         //System.out.println("Ball hit by bat. Bat ID: " + (bat == player1 ? "Player 1" : bat == player2 ? "Player 2" : "Player 3"));
-                if (bat == player1) {
-                    server.broadcast(BALL_HIT_BAT1);
-                } else if (bat == player2) {
-                    server.broadcast(BALL_HIT_BAT2);
-                } else if (bat == player3) {
-                    server.broadcast(BALL_HIT_BAT3);
+                int player = bat == player1 ? 1 : bat == player2 ? 2 : bat == player3 ? 3 : 0;
+                if (player != 0) {
+                    var event = events.next(GameEvent.Type.BALL_HIT_BAT, tick);
+                    event.player = player;
+                    events.publish();
                 }
+
+                collision.room = PongEvents.currentRoom;
+                collision.kind = "BAT";
+                collision.player = player;
+                collision.commit();
             }
         };
         
@@ -269,11 +553,23 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
         CollisionHandler ballpowerUpHandler = new CollisionHandler(EntityType.BALL, EntityType.POWER_UP) {
             @Override
             protected void onCollisionBegin(Entity ball, Entity powerUp) {
+                if (LOCKSTEP_MODE)
+                    return;
+
+                var collision = new PongEvents.Collision();
+                collision.begin();
+
                 powerUp.removeFromWorld();
                 powerUpActive = false; 
                 BallComponent ballComponent = ball.getComponent(BallComponent.class);
                 ballComponent.slowDown();
-                server.broadcast(BALL_HIT_powerUp);
+
+                events.next(GameEvent.Type.BALL_HIT_POWER_UP, tick);
+                events.publish();
+
+                collision.room = PongEvents.currentRoom;
+                collision.kind = "POWER_UP";
+                collision.commit();
         
         }
             
@@ -286,6 +582,9 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
 
     @Override
     protected void initUI() {
+        if (OBSERVER_MODE)
+            return;
+
         MainUIController controller = new MainUIController();
         UI ui = getAssetLoader().loadUI("main.fxml", controller);
 
@@ -301,9 +600,80 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
 
     @Override
     protected void onUpdate(double tpf) {
-        if (!server.getConnections().isEmpty()) {
-            var message = "GAME_DATA," + player1.getY() + "," + player2.getY() + "," + player3.getX() + "," + ball.getX() + "," + ball.getY() + "," + getPowerUpData();
-            server.broadcast(message);
+        // the previous tick event covers everything since the last update, including FXGL's physics step
+        if (tickEvent != null) {
+            tickEvent.commit();
+        }
+
+        tick++;
+
+        tickEvent = new PongEvents.Tick();
+        tickEvent.room = PongEvents.currentRoom;
+        tickEvent.tick = tick;
+        tickEvent.begin();
+
+        if (!serverStarted && warmupDone && tick >= WARMUP_TICKS) {
+            startServer();
+        }
+
+        updateRoom();
+
+        var phase = beginPhase("input");
+        applyInput();
+        phase.commit();
+
+        phase = beginPhase("ai");
+        updateAI();
+        phase.commit();
+
+        if (lockstep != null) {
+            phase = beginPhase("lockstep");
+            stepLockstep(tpf);
+            phase.commit();
+        }
+
+        phase = beginPhase("events");
+        uiEvents.poll(event -> {
+            if (event.getType() == GameEvent.Type.SCORE) {
+                set("player1score", event.getPlayer1Score());
+                set("player2score", event.getPlayer2Score());
+                set("player3score", event.getPlayer3Score());
+            } else if (event.getType() == GameEvent.Type.BALL_HIT_WALL && !OBSERVER_MODE) {
+                getGameScene().getViewport().shakeTranslational(5);
+            }
+        });
+        phase.commit();
+
+        if (liveRoom != null && lockstep != null) {
+            // lockstep clients simulate the match themselves, only the local export is kept
+            phase = beginPhase("snapshot encode");
+            exportSnapshot(false);
+            phase.commit();
+        } else if (liveRoom != null) {
+            phase = beginPhase("snapshot encode");
+            exportSnapshot(false);
+
+            var message = "GAME_DATA," + player1.getY() + "," + player2.getY() + "," + player3.getX() + "," + ball.getX() + "," + ball.getY() + "," + getPowerUpData()
+                    + "," + tick + "," + serverTime();
+            phase.commit();
+
+            phase = beginPhase("broadcast");
+            var broadcast = new PongEvents.Broadcast();
+            broadcast.begin();
+
+            for (int i = 0; i < Room.SIZE; i++) {
+                var session = liveRoom.getSeat(i);
+                if (session != null && session.shouldSendSnapshot(tick)) {
+                    session.getConnection().send(message);
+                    broadcast.recipients++;
+                }
+            }
+
+            broadcast.room = liveRoom.getId();
+            broadcast.type = "GAME_DATA";
+            broadcast.size = message.length();
+            broadcast.commit();
+            phase.commit();
         }
 
  
@@ -321,6 +691,466 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
     }
 
 
+    /**
+     * Frees seats of disconnected players and starts the next formed room once the current one is empty.
+     */
+    private void updateRoom() {
+        if (liveRoom != null) {
+            for (int i = 0; i < Room.SIZE; i++) {
+                var session = liveRoom.getSeat(i);
+                if (session != null && !session.getConnection().isConnected()) {
+                    liveRoom.leave(session);
+
+                    for (var key : SEAT_KEYS[i]) {
+                        getInput().mockKeyRelease(key);
+                    }
+                    lockstepInputs[i] = 0;
+                }
+            }
+
+            if (!liveRoom.isEmpty()) {
+                // players waiting in the lobby take the seats that are free
+                if (lobby.backfill(liveRoom) > 0) {
+                    seatPlayers();
+                }
+                return;
+            }
+
+            lobby.release(liveRoom);
+            liveRoom = null;
+            PongEvents.currentRoom = 0;
+
+            closeSnapshotExport();
+        }
+
+        liveRoom = lobby.startNextRoom();
+        if (liveRoom == null)
+            return;
+
+        PongEvents.currentRoom = liveRoom.getId();
+
+        openSnapshotExport(liveRoom);
+
+        resetScores();
+
+        seatPlayers();
+    }
+
+    private void resetScores() {
+        Arrays.fill(scores, 0);
+
+        set("player1score", 0);
+        set("player2score", 0);
+        set("player3score", 0);
+    }
+
+    /**
+     * Tells the room's new players their seat, they take over from the AI with their bats at rest.
+     * Lockstep clients can only start from the beginning, so in lockstep mode the match restarts for everyone.
+     */
+    private void seatPlayers() {
+        for (int i = 0; i < Room.SIZE; i++) {
+            var session = liveRoom.getSeat(i);
+            if (session != null && session.getRoom() != liveRoom) {
+                session.seat(liveRoom, i);
+                seatBatComponents[i].stop();
+                session.getConnection().send(ROOM + "," + liveRoom.getId() + "," + (i + 1));
+            }
+        }
+
+        if (lockstep == null)
+            return;
+
+        // every start replays the same layout from its own seed
+        int seed = ThreadLocalRandom.current().nextInt();
+        lockstep = newLockstepSimulation(seed);
+        lockstepTime = 0;
+        Arrays.fill(lockstepInputs, 0);
+
+        resetScores();
+
+        // clients build their simulation from this message alone, see LockstepSimulation.fromLayout()
+        broadcastToRoom(LOCKSTEP + "," + seed + "," + LockstepSimulation.TICK_RATE + "," + CHECKSUM_INTERVAL + "," + lockstep.getLayout());
+    }
+
+    /**
+     * Turns game events into network messages on a separate thread so that physics callbacks never wait on I/O.
+     */
+    private void sendEventsLoop() {
+        GameEventRing.Handler handler = event -> {
+            // lockstep clients get these from their own simulation
+            if (LOCKSTEP_MODE)
+                return;
+
+            switch (event.getType()) {
+                case BALL_HIT_BAT:
+                    broadcastToRoom(event.getPlayer() == 1 ? BALL_HIT_BAT1 : event.getPlayer() == 2 ? BALL_HIT_BAT2 : BALL_HIT_BAT3);
+                    break;
+
+                case BALL_HIT_POWER_UP:
+                    broadcastToRoom(BALL_HIT_powerUp);
+                    break;
+
+                case SCORE:
+                    broadcastToRoom("SCORES," + event.getPlayer1Score() + "," + event.getPlayer2Score() + "," + event.getPlayer3Score());
+                    break;
+
+                default:
+                    break;
+            }
+        };
+
+        while (true) {
+            if (networkEvents.poll(handler) == 0) {
+                LockSupport.parkNanos(1_000_000);
+            }
+        }
+    }
+
+    private void openSnapshotExport(Room room) {
+        if (SNAPSHOT_DIR == null)
+            return;
+
+        try {
+            snapshotExporter = new SnapshotExporter(Paths.get(SNAPSHOT_DIR, "room-" + room.getId() + ".snap"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeSnapshotExport() {
+        if (snapshotExporter == null)
+            return;
+
+        // let readers know this room is over
+        exportSnapshot(true);
+
+        var file = snapshotExporter.getFile();
+
+        try {
+            snapshotExporter.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        snapshotExporter = null;
+
+        getGameTimer().runOnceAfter(() -> deleteSnapshotFile(file), Duration.seconds(SNAPSHOT_GRACE_SECONDS));
+    }
+
+    /**
+     * Room ids start from 1 again after a restart, so files left by the previous run would be taken for new rooms.
+     */
+    private void deleteStaleSnapshotFiles() {
+        if (SNAPSHOT_DIR == null)
+            return;
+
+        try (var files = Files.newDirectoryStream(Paths.get(SNAPSHOT_DIR), "room-*.snap")) {
+            for (var file : files) {
+                deleteSnapshotFile(file);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void deleteSnapshotFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // still mapped by a reader on some platforms, the next run removes it
+            System.out.println("Could not delete " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Publishes the state read from the entities this tick to the snapshot file, if exporting.
+     */
+    private void exportSnapshot(boolean finished) {
+        if (snapshotExporter == null)
+            return;
+
+        snapshot.tick = tick;
+        snapshot.serverTime = serverTime();
+        snapshot.room = PongEvents.currentRoom;
+        snapshot.finished = finished;
+
+        snapshot.player1X = player1.getX();
+        snapshot.player1Y = player1.getY();
+        snapshot.player2X = player2.getX();
+        snapshot.player2Y = player2.getY();
+        snapshot.player3X = player3.getX();
+        snapshot.player3Y = player3.getY();
+        snapshot.ballX = ball.getX();
+        snapshot.ballY = ball.getY();
+
+        snapshot.powerUpActive = powerUp.isActive();
+        snapshot.powerUpX = powerUp.getX();
+        snapshot.powerUpY = powerUp.getY();
+
+        snapshot.player1Score = scores[0];
+        snapshot.player2Score = scores[1];
+        snapshot.player3Score = scores[2];
+
+        snapshot.worldWidth = getAppWidth();
+        snapshot.worldHeight = getAppHeight();
+
+        snapshotExporter.publish(snapshot);
+    }
+
+    private PongEvents.TickPhase beginPhase(String name) {
+        var phase = new PongEvents.TickPhase();
+        phase.room = PongEvents.currentRoom;
+        phase.tick = tick;
+        phase.phase = name;
+        phase.begin();
+        return phase;
+    }
+
+    /**
+     * Applies the key state each seated player asked for since the last tick,
+     * so repeated presses and releases within a tick turn into at most one change per key.
+     */
+    private void applyInput() {
+        var room = liveRoom;
+        if (room == null)
+            return;
+
+        for (int seat = 0; seat < Room.SIZE; seat++) {
+            var session = room.getSeat(seat);
+            if (session == null)
+                continue;
+
+            for (int i = 0; i < SEAT_KEYS[seat].length; i++) {
+                int change = session.takeKeyChange(i);
+
+                // lockstep seats read the applied keys below instead
+                if (lockstep != null)
+                    continue;
+
+                if (change > 0) {
+                    getInput().mockKeyPress(SEAT_KEYS[seat][i]);
+                } else if (change < 0) {
+                    getInput().mockKeyRelease(SEAT_KEYS[seat][i]);
+                }
+            }
+
+            if (lockstep != null) {
+                lockstepInputs[seat] = session.getKeyInputBits();
+            }
+        }
+    }
+
+    /**
+     * Lets the AI policy move the bat of every seat nobody is sitting in, all seats while no room is running.
+     * All AI bats are collected into one batch and decided in a single call.
+     */
+    private void updateAI() {
+        if (AI_POLICY == null)
+            return;
+
+        var room = liveRoom;
+        var ballPhysics = ball.getComponent(PhysicsComponent.class);
+
+        double ballX = ball.getX() + ball.getWidth() / 2;
+        double ballY = ball.getY() + ball.getHeight() / 2;
+
+        aiBatch.clear();
+
+        for (int seat = 0; seat < Room.SIZE; seat++) {
+            if (room != null && !room.isSeatFree(seat))
+                continue;
+
+            var bat = seatBats[seat];
+
+            aiBatch.add(seat, seat == 2 ? AiBatch.HORIZONTAL : AiBatch.VERTICAL,
+                    bat.getX() + bat.getWidth() / 2, bat.getY() + bat.getHeight() / 2, bat.getWidth(), bat.getHeight(),
+                    ballX, ballY,
+                    lockstep != null ? lockstep.getBallVelocityX() : ballPhysics.getVelocityX(),
+                    lockstep != null ? lockstep.getBallVelocityY() : ballPhysics.getVelocityY(),
+                    getAppWidth(), getAppHeight());
+        }
+
+        if (aiBatch.size() == 0)
+            return;
+
+        AI_POLICY.decide(aiBatch);
+
+        for (int i = 0; i < aiBatch.size(); i++) {
+            int seat = aiBatch.getSeat(i);
+            var bat = seatBatComponents[seat];
+            int command = aiBatch.getCommand(i);
+
+            if (lockstep != null) {
+                lockstepInputs[seat] = command > 0 ? LockstepSimulation.INPUT_POSITIVE : command < 0 ? LockstepSimulation.INPUT_NEGATIVE : 0;
+            } else if (command == 0) {
+                bat.stop();
+            } else if (seat == 2) {
+                if (command > 0)
+                    bat.right();
+                else
+                    bat.left();
+            } else {
+                if (command > 0)
+                    bat.down();
+                else
+                    bat.up();
+            }
+        }
+    }
+
+    /**
+     * Runs the lockstep simulation at its fixed tick rate whatever the frame rate,
+     * sends each tick's input changes and periodic checksums to the room, and moves the entities to the simulated state.
+     */
+    private void stepLockstep(double tpf) {
+        double step = 1.0 / LockstepSimulation.TICK_RATE;
+
+        // after a long stall skip ahead instead of running a burst of ticks
+        lockstepTime = Math.min(lockstepTime + tpf, 0.25);
+
+        while (lockstepTime >= step) {
+            lockstepTime -= step;
+
+            // every tick is sent, even without changes, so that clients know they may advance
+            var message = new StringBuilder(INPUT).append(',').append(lockstep.getTick() + 1);
+
+            for (int seat = 0; seat < Room.SIZE; seat++) {
+                if (lockstepInputs[seat] != lockstep.getInput(seat)) {
+                    lockstep.setInput(seat, lockstepInputs[seat]);
+                    message.append(',').append(seat + 1).append(':').append(lockstepInputs[seat]);
+                }
+            }
+
+            publishLockstepEvents(lockstep.step());
+
+            if (liveRoom != null) {
+                broadcastToRoom(message.toString());
+
+                if (lockstep.getTick() % CHECKSUM_INTERVAL == 0) {
+                    broadcastToRoom(CHECKSUM + "," + lockstep.getTick() + "," + Long.toHexString(lockstep.checksum()));
+                }
+            }
+        }
+
+        var ballPhysics = ball.getComponent(PhysicsComponent.class);
+        ballPhysics.setLinearVelocity(0, 0);
+        ballPhysics.overwritePosition(new Point2D(lockstep.getBallX(), lockstep.getBallY()));
+
+        for (int seat = 0; seat < Room.SIZE; seat++) {
+            seatBats[seat].getComponent(PhysicsComponent.class).overwritePosition(new Point2D(lockstep.getBatX(seat), lockstep.getBatY(seat)));
+        }
+
+        if (lockstep.isPowerUpActive() && !powerUp.isActive()) {
+            powerUp = spawn("powerUp", new SpawnData(getAppWidth() / 2, getAppHeight() / 2));
+        } else if (!lockstep.isPowerUpActive() && powerUp.isActive()) {
+            powerUp.removeFromWorld();
+        }
+        powerUpActive = lockstep.isPowerUpActive();
+    }
+
+    /**
+     * Publishes what happened in a lockstep tick like the collision handlers do in snapshot mode, for the UI and stats.
+     */
+    private void publishLockstepEvents(int happened) {
+        if ((happened & LockstepSimulation.EVENT_SCORE) != 0) {
+            // a bat can be hit in the same tick, so all scores are copied rather than the scorer's
+            for (int i = 0; i < Room.SIZE; i++) {
+                scores[i] = lockstep.getScore(i);
+            }
+
+            var event = events.next(GameEvent.Type.SCORE, tick);
+            event.player1Score = scores[0];
+            event.player2Score = scores[1];
+            event.player3Score = scores[2];
+            events.publish();
+        }
+
+        if ((happened & LockstepSimulation.EVENT_WALL) != 0) {
+            events.next(GameEvent.Type.BALL_HIT_WALL, tick);
+            events.publish();
+        }
+
+        if ((happened & LockstepSimulation.EVENT_BAT) != 0) {
+            var event = events.next(GameEvent.Type.BALL_HIT_BAT, tick);
+            event.player = lockstep.getLastBatHit() + 1;
+            events.publish();
+        }
+
+        if ((happened & LockstepSimulation.EVENT_POWER_UP) != 0) {
+            events.next(GameEvent.Type.BALL_HIT_POWER_UP, tick);
+            events.publish();
+        }
+    }
+
+    /**
+     * @return simulation starting from the layout spawned by initGameObjects()
+     */
+    private LockstepSimulation newLockstepSimulation(int seed) {
+        int[] batX = new int[Room.SIZE];
+        int[] batY = new int[Room.SIZE];
+        int[] batWidth = new int[Room.SIZE];
+        int[] batHeight = new int[Room.SIZE];
+
+        batX[0] = getAppWidth() / 4;
+        batY[0] = getAppHeight() / 2 - 30;
+        batX[1] = 3 * getAppWidth() / 4 - 20;
+        batY[1] = getAppHeight() / 2 - 30;
+        batX[2] = getAppWidth() / 2 - 60 / 2;
+        batY[2] = getAppHeight() - 50 - 30;
+
+        for (int seat = 0; seat < Room.SIZE; seat++) {
+            batWidth[seat] = (int) seatBats[seat].getWidth();
+            batHeight[seat] = (int) seatBats[seat].getHeight();
+        }
+
+        return new LockstepSimulation(seed, getAppWidth(), getAppHeight(),
+                getAppWidth() / 2 - 30, 0,
+                batX, batY, batWidth, batHeight,
+                getAppWidth() / 2, getAppHeight() / 2);
+    }
+
+    private void broadcastToRoom(String message) {
+        var room = liveRoom;
+        if (room == null)
+            return;
+
+        var event = new PongEvents.Broadcast();
+        event.begin();
+
+        for (int i = 0; i < Room.SIZE; i++) {
+            var session = room.getSeat(i);
+            if (session != null) {
+                session.getConnection().send(message);
+                event.recipients++;
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.room = room.getId();
+            event.type = messageType(message);
+            event.size = message.length();
+            event.commit();
+        }
+    }
+
+    private static String messageType(String message) {
+        int comma = message.indexOf(',');
+        return comma < 0 ? message : message.substring(0, comma);
+    }
+
+    /**
+     * @return index of the key in the seat's keys, or -1 if the seat may not press it
+     */
+    private static int seatKeyIndex(int seat, KeyCode key) {
+        for (int i = 0; i < SEAT_KEYS[seat].length; i++) {
+            if (SEAT_KEYS[seat][i] == key)
+                return i;
+        }
+        return -1;
+    }
+
     private String getPowerUpData() {
         if (powerUp.isActive()) {
             return powerUp.getX() + "," + powerUp.getY() + ",1"; // 1 indicates active
@@ -350,6 +1180,19 @@ private void initGameObjects() {
     player1Bat = player1.getComponent(BatComponent.class);
     player2Bat = player2.getComponent(BatComponent.class);
     player3Bat = player3.getComponent(BatComponent.class);
+
+    seatBats = new Entity[] { player1, player2, player3 };
+    seatBatComponents = new BatComponent[] { player1Bat, player2Bat, player3Bat };
+
+    if (LOCKSTEP_MODE) {
+        lockstep = newLockstepSimulation(0);
+    }
+
+    if (OBSERVER_MODE) {
+        for (var entity : Arrays.asList(ball, player1, player2, player3, powerUp)) {
+            entity.getViewComponent().setVisible(false);
+        }
+    }
 }
 
 
@@ -366,16 +1209,122 @@ private void initGameObjects() {
 
     @Override
     public void onReceive(Connection<String> connection, String message) {
+        var event = new PongEvents.MessageDecode();
+        event.begin();
+
+        var session = sessions.get(connection);
+        if (session != null) {
+            handleMessage(session, message);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.room = session != null && session.getRoom() != null ? session.getRoom().getId() : 0;
+            event.connection = connection.getConnectionNum();
+            event.type = messageType(message);
+            event.size = message.length();
+            event.commit();
+        }
+    }
+
+    private void handleMessage(ClientSession session, String message) {
+        var connection = session.getConnection();
+
+        if (BEHIND_GATEWAY && message.startsWith(MATCH + ",")) {
+            // the client's first bytes may have arrived in the same read, after the newline
+            int end = message.indexOf('\n');
+            var matchId = message.substring(MATCH.length() + 1, end < 0 ? message.length() : end).trim();
+
+            try {
+                if (lobby.enqueueMatch(session, Integer.parseInt(matchId))) {
+                    connection.send(LOBBY_QUEUED);
+                }
+            } catch (NumberFormatException e) {
+                // ignore malformed match id
+            }
+
+            if (end >= 0 && end + 1 < message.length()) {
+                handleMessage(session, message.substring(end + 1));
+            }
+            return;
+        }
+
         var tokens = message.split(",");
+
+        if (tokens[0].equals(PONG)) {
+            if (tokens.length >= 4) {
+                try {
+                    session.onPong(Integer.parseInt(tokens[1]), Long.parseLong(tokens[2]), Long.parseLong(tokens[3].trim()), serverTime());
+                } catch (NumberFormatException e) {
+                    // ignore malformed pong
+                }
+            }
+            return;
+        }
+
+        if (tokens[0].equals(COMPRESSION)) {
+            if (tokens.length > 1 && tokens[1].equals(COMPRESSION_ACCEPT) && COMPRESSION_LEVEL != COMPRESSION_OFF) {
+                connection.send(COMPRESSION_ON);
+            }
+            return;
+        }
+
+        if (tokens[0].equals(QUEUE)) {
+            // players can pick a mode and skill until they are put in a room, format QUEUE,mode,skill
+            // behind a gateway the gateway's grouping is kept
+            if (!BEHIND_GATEWAY && tokens.length >= 3) {
+                try {
+                    lobby.enqueue(session, tokens[1], Integer.parseInt(tokens[2].trim()));
+                } catch (NumberFormatException e) {
+                    // ignore malformed request
+                }
+            }
+            return;
+        }
+
+        // only players seated in the running room control a bat, and only their own
+        if (liveRoom == null || session.getRoom() != liveRoom)
+            return;
+
+        int seat = session.getSeat();
     
-        Arrays.stream(tokens).skip(1).forEach(key -> {
-            if (key.endsWith("_DOWN")) {
-                getInput().mockKeyPress(KeyCode.valueOf(key.substring(0, 1)));
-            } else if (key.endsWith("_UP")) {
-                getInput().mockKeyRelease(KeyCode.valueOf(key.substring(0, 1)));
-            } 
+        Arrays.stream(tokens).skip(1).forEach(token -> {
+            int key = decodeKeyToken(seat, token);
+            if (key >= 0) {
+                session.requestKey(key / 2, key % 2 == 1);
+            }
         });
     }
+
+    /**
+     * Decodes one key token of an input message, e.g. W_DOWN.
+     *
+     * @return index of the key in the seat's keys times two, plus one if pressed,
+     * or -1 if the token is not a press or release of the seat's keys
+     */
+    static int decodeKeyToken(int seat, String token) {
+        if (token.isEmpty())
+            return -1;
+
+        KeyCode key;
+        try {
+            key = KeyCode.valueOf(token.substring(0, 1));
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+
+        int index = seatKeyIndex(seat, key);
+        if (index < 0)
+            return -1;
+
+        if (token.endsWith("_DOWN"))
+            return index * 2 + 1;
+
+        if (token.endsWith("_UP"))
+            return index * 2;
+
+        return -1;
+    }
     
         
             
@@ -384,31 +1333,231 @@ private void initGameObjects() {
     
 
 
+    /**
+     * @return milliseconds since the server started, used for snapshot timestamps and pings
+     */
+    static long serverTime() {
+        return (System.nanoTime() - START_NANOS) / 1_000_000;
+    }
+
+    static int compressionLevel(String value) {
+        switch (value) {
+            case "off":
+                return COMPRESSION_OFF;
+            case "fast":
+                return Deflater.BEST_SPEED;
+            case "best":
+                return Deflater.BEST_COMPRESSION;
+            default:
+                int level = Integer.parseInt(value);
+                if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+                    throw new IllegalArgumentException("Compression level must be 0-9: " + value);
+                return level;
+        }
+    }
+
     static class MessageWriterS implements TCPMessageWriter<String> {
 
+        private static final byte[] DICTIONARY = COMPRESSION_DICTIONARY.getBytes(StandardCharsets.US_ASCII);
+
+        private static final String PLAYER_ID = "PLAYER_ID,";
+
+        // writers that have sent PLAYER_ID but not been claimed by their session yet, by player id
+        private static final Map<String, MessageWriterS> UNCLAIMED = new ConcurrentHashMap<>();
+
         private OutputStream os;
         private PrintWriter out;
 
-        MessageWriterS(OutputStream os) {
+        private final int compressionLevel;
+        private volatile Deflater deflater;
+        private volatile boolean compressed = false;
+        private boolean closed = false;
+        private boolean announced = false;
+
+        private volatile MessageReaderS reader;
+
+        private final PacketTracer tracer;
+
+        // reused between writes, messages are ASCII so each char is one byte
+        private byte[] input = new byte[256];
+        private byte[] output = new byte[512];
+
+        // only written by the connection's writer thread
+        private volatile long rawBytes;
+        private volatile long wireBytes;
+        private volatile long deflateNanos;
+        private volatile long snapshotsWritten;
+
+        private volatile int connectionNum = 0;
+
+        MessageWriterS(OutputStream os, int compressionLevel, PacketTracer tracer) {
             this.os = os;
+            this.compressionLevel = compressionLevel;
+            this.tracer = tracer;
             out = new PrintWriter(os, true);
         }
 
+        // the game loop and the event thread both send, so writes are serialized here
         @Override
-        public void write(String s) throws Exception {
+        public synchronized void write(String s) throws Exception {
+            if (closed)
+                throw new IOException("Connection " + connectionNum + " closed");
+
+            // the first message on every connection is its PLAYER_ID, which ties this writer to the connection's session
+            if (!announced && s.startsWith(PLAYER_ID)) {
+                announced = true;
+                UNCLAIMED.put(s.substring(PLAYER_ID.length()), this);
+            }
+
+            tracer.recordOutbound(connectionNum, s);
+
+            try {
+                if (deflater != null) {
+                    writeCompressed(s);
+                } else {
+                    writePlain(s);
+                }
+            } catch (Exception e) {
+                if (tracer.isEnabled()) {
+                    tracer.dumpAsync(".");
+                }
+                close();
+                throw e;
+            }
+
+            if (s.startsWith("GAME_DATA")) {
+                snapshotsWritten++;
+            }
+        }
+
+        private void writePlain(String s) {
             out.print(s.toCharArray());
             out.flush();
+
+            // the confirmation itself goes out uncompressed, everything after it is deflated
+            if (s.equals(COMPRESSION_ON) && compressionLevel != COMPRESSION_OFF) {
+                deflater = new Deflater(compressionLevel);
+                deflater.setDictionary(DICTIONARY);
+                compressed = true;
+            }
+        }
+
+        /**
+         * Frees the deflater's native memory, later writes fail. Called when the connection closes or a write fails.
+         */
+        synchronized void close() {
+            closed = true;
+
+            if (deflater != null) {
+                deflater.end();
+                deflater = null;
+            }
+        }
+
+        private void writeCompressed(String s) throws IOException {
+            int length = s.length();
+            if (input.length < length) {
+                input = new byte[Math.max(length, input.length * 2)];
+            }
+
+            for (int i = 0; i < length; i++) {
+                input[i] = (byte) s.charAt(i);
+            }
+
+            long nanos = 0;
+            long written = 0;
+
+            deflater.setInput(input, 0, length);
+
+            // messages are not delimited, so each one is sync flushed on its own rather than batched per tick,
+            // the client inflates exactly this message without waiting for the next one
+            int len;
+            do {
+                long start = System.nanoTime();
+                len = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+                nanos += System.nanoTime() - start;
+
+                os.write(output, 0, len);
+                written += len;
+            } while (len == output.length);
+
+            deflateNanos += nanos;
+            rawBytes += length;
+            wireBytes += written;
+
+            os.flush();
+        }
+
+        boolean isCompressed() {
+            return compressed;
+        }
+
+        long getRawBytes() {
+            return rawBytes;
+        }
+
+        long getWireBytes() {
+            return wireBytes;
+        }
+
+        long getDeflateNanos() {
+            return deflateNanos;
+        }
+
+        long getSnapshotsWritten() {
+            return snapshotsWritten;
+        }
+
+        void setConnectionNum(int connectionNum) {
+            this.connectionNum = connectionNum;
+        }
+
+        void setReader(MessageReaderS reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return reader of the same socket, or null if it could not be paired
+         */
+        MessageReaderS getReader() {
+            return reader;
+        }
+
+        /**
+         * @return the writer that sent PLAYER_ID with given id, or null if it has not been written yet
+         */
+        static MessageWriterS claim(String playerId) {
+            return UNCLAIMED.remove(playerId);
         }
     }
 
     static class MessageReaderS implements TCPMessageReader<String> {
 
+        static final LongAdder TOTAL_REJECTED = new LongAdder();
+        static final LongAdder TOTAL_DISCONNECTED = new LongAdder();
+
+        // compared by reference, tells read() the stream has ended
+        private static final String CLOSED = new String("CLOSED");
+
         private BlockingQueue<String> messages = new ArrayBlockingQueue<>(50);
 
         private InputStreamReader in;
 
-        MessageReaderS(InputStream is) {
+        private volatile int connectionNum = 0;
+
+        private final PacketTracer tracer;
+        private final TokenBucket messageBucket;
+        private final TokenBucket byteBucket;
+
+        private volatile long rejected = 0;
+        private int rejectedThisSecond = 0;
+        private long secondStart = System.nanoTime();
+
+        MessageReaderS(InputStream is, PacketTracer tracer, TokenBucket messageBucket, TokenBucket byteBucket) {
             in =  new InputStreamReader(is);
+            this.tracer = tracer;
+            this.messageBucket = messageBucket;
+            this.byteBucket = byteBucket;
 
             var t = new Thread(() -> {
                 try {
@@ -420,23 +1569,93 @@ private void initGameObjects() {
                     while ((len = in.read(buf)) > 0) {
                         var message = new String(Arrays.copyOf(buf, len));
 
-                        System.out.println("Recv message: " + message);
-
-                        messages.put(message);
+                        tracer.recordInbound(connectionNum, message);
+
+                        if (accept(len)) {
+                            messages.put(message);
+                        } else if (rejectedThisSecond > INPUT_MAX_REJECTED_PER_SECOND) {
+                            System.out.println("Connection " + connectionNum + " dropped: input rate exceeded");
+                            TOTAL_DISCONNECTED.increment();
+                            break;
+                        } else {
+                            // key releases still go through, or a dropped W_UP would leave the bat moving
+                            var releases = keyReleases(message);
+                            if (releases != null) {
+                                messages.put(releases);
+                            }
+                        }
                     }
 
                 } catch (Exception e) {
+                    if (tracer.isEnabled()) {
+                        tracer.dumpAsync(".");
+                    }
                     e.printStackTrace();
                 }
+
+                messages.clear();
+                messages.offer(CLOSED);
             });
 
             t.setDaemon(true);
             t.start();
         }
 
+        void setConnectionNum(int connectionNum) {
+            this.connectionNum = connectionNum;
+        }
+
+        private boolean accept(int length) {
+            long now = System.nanoTime();
+            if (now - secondStart >= 1_000_000_000L) {
+                secondStart = now;
+                rejectedThisSecond = 0;
+            }
+
+            // a message over the byte limit must not use up a message token, and the other way round
+            if (messageBucket.canTake(1) && byteBucket.canTake(length)) {
+                messageBucket.take(1);
+                byteBucket.take(length);
+                return true;
+            }
+
+            rejected++;
+            rejectedThisSecond++;
+            TOTAL_REJECTED.increment();
+            return false;
+        }
+
+        long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return the message with only its first token and its key release tokens, or null if it has no releases
+         */
+        static String keyReleases(String message) {
+            var tokens = message.split(",");
+            var releases = new StringBuilder(tokens[0]);
+
+            for (int i = 1; i < tokens.length; i++) {
+                if (tokens[i].endsWith("_UP")) {
+                    releases.append(',').append(tokens[i]);
+                }
+            }
+
+            return releases.length() == tokens[0].length() ? null : releases.toString();
+        }
+
         @Override
         public String read() throws Exception {
-            return messages.take();
+            var message = messages.take();
+
+            if (message == CLOSED) {
+                // keep the marker for any later read, then let the connection close
+                messages.offer(CLOSED);
+                throw new IOException("Connection " + connectionNum + " closed");
+            }
+
+            return message;
         }
     }
 
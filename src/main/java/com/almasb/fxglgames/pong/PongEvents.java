@@ -0,0 +1,157 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the server. All are disabled unless turned on by a recording,
+ * e.g. with the shipped src/main/jfr/pong.jfc.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public final class PongEvents {
+
+    // room of the running match, 0 while none is running
+    static volatile int currentRoom = 0;
+
+    private PongEvents() { }
+
+    @Name("pong.Tick")
+    @Label("Tick")
+    @Category("Pong")
+    @Description("Time between two game loop updates, including FXGL's world update and physics step")
+    @StackTrace(false)
+    static class Tick extends Event {
+
+        @Label("Room")
+        int room;
+
+        @Label("Tick")
+        long tick;
+    }
+
+    @Name("pong.TickPhase")
+    @Label("Tick Phase")
+    @Category("Pong")
+    @Description("A phase of the server's own per tick work")
+    @StackTrace(false)
+    static class TickPhase extends Event {
+
+        @Label("Room")
+        int room;
+
+        @Label("Tick")
+        long tick;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("pong.BallUpdate")
+    @Label("Ball Update")
+    @Category("Pong")
+    @Description("BallComponent.onUpdate velocity and position corrections")
+    @StackTrace(false)
+    static class BallUpdate extends Event {
+
+        @Label("Room")
+        int room;
+
+        @Label("Velocity Corrected")
+        boolean velocityCorrected;
+
+        @Label("Position Reset")
+        boolean positionReset;
+    }
+
+    @Name("pong.Broadcast")
+    @Label("Broadcast")
+    @Category("Pong")
+    @Description("A message sent to the players of a room")
+    @StackTrace(false)
+    static class Broadcast extends Event {
+
+        @Label("Room")
+        int room;
+
+        @Label("Message Type")
+        String type;
+
+        @Label("Recipients")
+        int recipients;
+
+        @Label("Size")
+        @DataAmount
+        int size;
+    }
+
+    @Name("pong.MessageDecode")
+    @Label("Message Decode")
+    @Category("Pong")
+    @Description("Handling of one inbound message in onReceive")
+    @StackTrace(false)
+    static class MessageDecode extends Event {
+
+        @Label("Room")
+        int room;
+
+        @Label("Connection")
+        int connection;
+
+        @Label("Message Type")
+        String type;
+
+        @Label("Size")
+        @DataAmount
+        int size;
+    }
+
+    @Name("pong.Collision")
+    @Label("Collision")
+    @Category("Pong")
+    @Description("A collision callback from the physics world")
+    @StackTrace(false)
+    static class Collision extends Event {
+
+        @Label("Room")
+        int room;
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Player")
+        int player;
+    }
+}
@@ -77,14 +77,19 @@ public class PongFactory implements EntityFactory {
         emitter.setSize(5, 10);
         emitter.setEmissionRate(1);
 
-        return entityBuilder(data)
+        var builder = entityBuilder(data)
                 .type(EntityType.BALL)
                 .bbox(new HitBox(BoundingShape.circle(5)))
                 .with(physics)
                 .with(new CollidableComponent(true))
-                .with(new ParticleComponent(emitter))
-                .with(new BallComponent())
-                .build();
+                .with(new BallComponent());
+
+        // nothing is drawn in observer mode, so skip the particles too
+        if (!PongApp.OBSERVER_MODE) {
+            builder.with(new ParticleComponent(emitter));
+        }
+
+        return builder.build();
     }
 
     @Spawns("bat")
@@ -0,0 +1,364 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accepts client connections and forwards each one to a backend {@link PongApp} process.
+ * Clients are grouped into matches of up to {@link Room#SIZE}, every connection of a match goes
+ * to the same backend, and each new match goes to the backend reporting the lowest load.
+ * Clients see a single server and do not know about the backends.
+ *
+ * Backends are listed as host:port:statusPort, where statusPort is the backend's pong.statusPort, e.g.
+ * -Dpong.gateway.backends=127.0.0.1:55601:56601,127.0.0.1:55602:56602
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public class PongGateway {
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int CONNECT_TIMEOUT = 2000;
+
+    private final int port;
+    private final List<Backend> backends;
+    private final long fillTimeoutNanos;
+
+    private final Map<Integer, Match> routes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextMatchId = new AtomicInteger(1);
+
+    // only touched by the accept thread
+    private Match openMatch;
+    private int openMatchSeats = 0;
+    private long openMatchCreated = 0;
+
+    public PongGateway(int port, List<Backend> backends, long fillTimeout) {
+        if (backends.isEmpty())
+            throw new IllegalArgumentException("No backends configured");
+
+        this.port = port;
+        this.backends = backends;
+        this.fillTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(fillTimeout);
+    }
+
+    public void run() throws IOException {
+        var poller = new Thread(this::pollLoad, "LoadPoller");
+        poller.setDaemon(true);
+        poller.start();
+
+        try (var serverSocket = new ServerSocket(port)) {
+            System.out.println("Gateway listening on " + port + " for " + backends.size() + " backends");
+
+            while (true) {
+                Socket client = serverSocket.accept();
+
+                Match match = routes.get(assignMatch());
+                match.connections.incrementAndGet();
+
+                // connecting can take up to CONNECT_TIMEOUT, which must not hold up other clients
+                var t = new Thread(() -> connect(client, match), "Connect-match" + match.id);
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+    }
+
+    /**
+     * Puts the client into the open match, opening a new match on the least-loaded backend if needed.
+     *
+     * @return match id of the client
+     */
+    private int assignMatch() {
+        long now = System.nanoTime();
+
+        if (openMatch == null
+                || openMatchSeats >= Room.SIZE
+                || now - openMatchCreated >= fillTimeoutNanos
+                || !openMatch.backend.isUp()) {
+
+            if (openMatch != null) {
+                openMatch.open = false;
+                if (openMatch.connections.get() == 0) {
+                    routes.remove(openMatch.id);
+                }
+            }
+
+            Backend backend = leastLoaded();
+            backend.matchAssigned();
+
+            openMatch = new Match(nextMatchId.getAndIncrement(), backend);
+            openMatchSeats = 0;
+            openMatchCreated = now;
+
+            routes.put(openMatch.id, openMatch);
+        }
+
+        openMatchSeats++;
+        return openMatch.id;
+    }
+
+    /**
+     * Splices the client to its match's backend, moving the match to another backend if that one cannot be reached.
+     */
+    private void connect(Socket client, Match match) {
+        for (int attempt = 0; attempt < backends.size(); attempt++) {
+            Backend backend = match.backend;
+
+            try {
+                splice(client, match, backend);
+                return;
+            } catch (IOException e) {
+                System.out.println("Backend " + backend + " unavailable: " + e.getMessage());
+                reassign(match, backend);
+            }
+        }
+
+        disconnected(match);
+        closeQuietly(client);
+    }
+
+    /**
+     * Moves the match off a backend that failed, unless another client of the match already did.
+     */
+    private synchronized void reassign(Match match, Backend failed) {
+        if (match.backend != failed)
+            return;
+
+        failed.markDown();
+
+        Backend backend = leastLoaded();
+        backend.matchAssigned();
+        match.backend = backend;
+    }
+
+    private void disconnected(Match match) {
+        if (match.connections.decrementAndGet() == 0 && !match.open) {
+            routes.remove(match.id);
+        }
+    }
+
+    public int getMatchCount() {
+        return routes.size();
+    }
+
+    private Backend leastLoaded() {
+        Backend best = null;
+
+        for (var backend : backends) {
+            if (!backend.isUp())
+                continue;
+
+            if (best == null || backend.getLoad() < best.getLoad()) {
+                best = backend;
+            }
+        }
+
+        // if every backend looks down, try them anyway rather than refuse the client
+        return best != null ? best : backends.get(nextMatchId.get() % backends.size());
+    }
+
+    private void splice(Socket client, Match match, Backend backend) throws IOException {
+        var upstream = new Socket();
+
+        try {
+            upstream.connect(backend.gameAddress, CONNECT_TIMEOUT);
+            upstream.setTcpNoDelay(true);
+
+            // the backend's lobby seats clients with the same match id together, this goes ahead of any client bytes
+            OutputStream out = upstream.getOutputStream();
+            out.write((NetworkMessages.MATCH + "," + match.id + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        } catch (IOException e) {
+            closeQuietly(upstream);
+            throw e;
+        }
+
+        client.setTcpNoDelay(true);
+
+        pipe(client, upstream, "match" + match.id + "->" + backend, () -> disconnected(match));
+        pipe(upstream, client, backend + "->match" + match.id, () -> {});
+    }
+
+    private static void pipe(Socket from, Socket to, String name, Runnable onClose) {
+        var t = new Thread(() -> {
+            byte[] buf = new byte[BUFFER_SIZE];
+
+            try {
+                InputStream in = from.getInputStream();
+                OutputStream out = to.getOutputStream();
+
+                int len;
+                while ((len = in.read(buf)) != -1) {
+                    out.write(buf, 0, len);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // either side went away
+            } finally {
+                closeQuietly(from);
+                closeQuietly(to);
+                onClose.run();
+            }
+        }, name);
+
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    private void pollLoad() {
+        while (true) {
+            for (var backend : backends) {
+                backend.poll();
+            }
+
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    static final class Match {
+
+        private final int id;
+        private final AtomicInteger connections = new AtomicInteger();
+
+        // still accepting new clients
+        private volatile boolean open = true;
+
+        // changes if the backend cannot be reached
+        private volatile Backend backend;
+
+        Match(int id, Backend backend) {
+            this.id = id;
+            this.backend = backend;
+        }
+    }
+
+    static final class Backend {
+
+        private final InetSocketAddress gameAddress;
+        private final InetSocketAddress statusAddress;
+
+        private volatile boolean up = true;
+        private volatile int reportedLoad = 0;
+
+        // matches routed here since the last report, so a burst of new matches does not all pick the same backend
+        private final AtomicInteger recentMatches = new AtomicInteger();
+
+        Backend(String host, int gamePort, int statusPort) {
+            gameAddress = new InetSocketAddress(host, gamePort);
+            statusAddress = new InetSocketAddress(host, statusPort);
+        }
+
+        static Backend parse(String spec) {
+            var tokens = spec.trim().split(":");
+            if (tokens.length != 3)
+                throw new IllegalArgumentException("Backend must be host:port:statusPort, got: " + spec);
+
+            return new Backend(tokens[0], Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]));
+        }
+
+        boolean isUp() {
+            return up;
+        }
+
+        void markDown() {
+            up = false;
+        }
+
+        int getLoad() {
+            return reportedLoad + recentMatches.get() * Room.SIZE;
+        }
+
+        void matchAssigned() {
+            recentMatches.incrementAndGet();
+        }
+
+        /**
+         * Reads the backend's LOAD,connections,queued,rooms line.
+         */
+        void poll() {
+            try (var socket = new Socket()) {
+                socket.connect(statusAddress, CONNECT_TIMEOUT);
+                socket.setSoTimeout(CONNECT_TIMEOUT);
+
+                var reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                var tokens = reader.readLine().split(",");
+
+                reportedLoad = Integer.parseInt(tokens[1]);
+                recentMatches.set(0);
+                up = true;
+            } catch (Exception e) {
+                up = false;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return gameAddress.getHostString() + ":" + gameAddress.getPort();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.getInteger("pong.port", 55555);
+        long fillTimeout = Long.getLong("pong.lobby.fillTimeout", 3000);
+
+        List<Backend> backends = new ArrayList<>();
+        for (var spec : System.getProperty("pong.gateway.backends", "").split(",")) {
+            if (!spec.isBlank()) {
+                backends.add(Backend.parse(spec));
+            }
+        }
+
+        new PongGateway(port, backends, fillTimeout).run();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+/**
+ * Moves each bat to where the ball will cross the bat's line, following the ball's bounces off the walls.
+ * While the ball is far away in time the bat drifts back to the middle.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public final class PredictiveAiPolicy implements AiPolicy {
+
+    // about one frame of bat movement, avoids jitter around the target
+    private static final double DEAD_ZONE = 8;
+
+    private static final double MAX_LOOKAHEAD = 2.0;
+
+    @Override
+    public void decide(AiBatch b) {
+        for (int i = 0; i < b.size(); i++) {
+            boolean vertical = b.axis[i] == AiBatch.VERTICAL;
+
+            // a vertical bat waits on a vertical line and moves along y, a horizontal one the other way round
+            double line = vertical ? b.batX[i] : b.batY[i];
+            double position = vertical ? b.batY[i] : b.batX[i];
+
+            double ballAcross = vertical ? b.ballX[i] : b.ballY[i];
+            double ballAlong = vertical ? b.ballY[i] : b.ballX[i];
+            double velocityAcross = vertical ? b.ballVelocityX[i] : b.ballVelocityY[i];
+            double velocityAlong = vertical ? b.ballVelocityY[i] : b.ballVelocityX[i];
+            double sizeAcross = vertical ? b.worldWidth[i] : b.worldHeight[i];
+            double sizeAlong = vertical ? b.worldHeight[i] : b.worldWidth[i];
+
+            double t = timeToReach(ballAcross, velocityAcross, line, sizeAcross);
+
+            double target = t <= MAX_LOOKAHEAD
+                    ? fold(ballAlong + velocityAlong * t, sizeAlong)
+                    : sizeAlong / 2;
+
+            double diff = target - position;
+
+            b.command[i] = diff > DEAD_ZONE ? 1 : diff < -DEAD_ZONE ? -1 : 0;
+        }
+    }
+
+    /**
+     * @return seconds until a point bouncing in [0, size] from x with velocity v first reaches line
+     */
+    static double timeToReach(double x, double v, double line, double size) {
+        if (v == 0)
+            return Double.POSITIVE_INFINITY;
+
+        // unfold the bounces: the point reaches the line whenever x + v * t is line or -line modulo 2 * size
+        double best = Double.POSITIVE_INFINITY;
+
+        for (int k = -1; k <= 2; k++) {
+            double t1 = (line + 2 * k * size - x) / v;
+            double t2 = (-line + 2 * k * size - x) / v;
+
+            if (t1 >= 0 && t1 < best)
+                best = t1;
+
+            if (t2 >= 0 && t2 < best)
+                best = t2;
+        }
+
+        return best;
+    }
+
+    /**
+     * @return position in [0, size] of a point at unbounded position p bouncing between 0 and size
+     */
+    static double fold(double p, double size) {
+        double period = 2 * size;
+        double m = p % period;
+        if (m < 0)
+            m += period;
+
+        return m <= size ? m : period - m;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A match formed by the {@link Lobby}, holding up to {@link #SIZE} seated players.
+ * Seat index 0, 1 and 2 control player1, player2 and player3 respectively.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public class Room {
+
+    public static final int SIZE = 3;
+
+    private final int id;
+    private final String key;
+    // changed by the game loop, read by the event and network threads as well
+    private final AtomicReferenceArray<ClientSession> seats = new AtomicReferenceArray<>(SIZE);
+    private final long formationLatencyNanos;
+
+    private int worker = -1;
+
+    Room(int id, String key, List<ClientSession> players, long formationLatencyNanos) {
+        this.id = id;
+        this.key = key;
+        this.formationLatencyNanos = formationLatencyNanos;
+
+        for (int i = 0; i < players.size(); i++) {
+            seats.set(i, players.get(i));
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return lobby queue the players came from, mode#skillBand
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return index of the simulation worker running this room, or -1 if not started
+     */
+    public int getWorker() {
+        return worker;
+    }
+
+    void setWorker(int worker) {
+        this.worker = worker;
+    }
+
+    public long getFormationLatencyNanos() {
+        return formationLatencyNanos;
+    }
+
+    /**
+     * @return the session in given seat or null if the seat is free
+     */
+    public ClientSession getSeat(int seat) {
+        return seats.get(seat);
+    }
+
+    public boolean isSeatFree(int seat) {
+        return seats.get(seat) == null;
+    }
+
+    /**
+     * @return index of the first free seat, or -1 if the room is full
+     */
+    public int getFreeSeat() {
+        for (int i = 0; i < SIZE; i++) {
+            if (seats.get(i) == null)
+                return i;
+        }
+        return -1;
+    }
+
+    public boolean contains(ClientSession session) {
+        for (int i = 0; i < SIZE; i++) {
+            if (seats.get(i) == session)
+                return true;
+        }
+        return false;
+    }
+
+    void take(int seat, ClientSession session) {
+        seats.set(seat, session);
+    }
+
+    void leave(ClientSession session) {
+        for (int i = 0; i < SIZE; i++) {
+            seats.compareAndSet(i, session, null);
+        }
+    }
+
+    public boolean isEmpty() {
+        for (int i = 0; i < SIZE; i++) {
+            if (seats.get(i) != null)
+                return false;
+        }
+        return true;
+    }
+}
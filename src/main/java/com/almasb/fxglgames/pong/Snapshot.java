@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+/**
+ * State of a room at one tick, as exported by {@link SnapshotExporter}.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public final class Snapshot {
+
+    long tick;
+    long serverTime;
+    int room;
+    boolean powerUpActive;
+    boolean finished;
+
+    double player1X, player1Y;
+    double player2X, player2Y;
+    double player3X, player3Y;
+    double ballX, ballY;
+    double powerUpX, powerUpY;
+
+    int player1Score, player2Score, player3Score;
+
+    int worldWidth, worldHeight;
+
+    public void copyFrom(Snapshot other) {
+        tick = other.tick;
+        serverTime = other.serverTime;
+        room = other.room;
+        powerUpActive = other.powerUpActive;
+        finished = other.finished;
+        player1X = other.player1X;
+        player1Y = other.player1Y;
+        player2X = other.player2X;
+        player2Y = other.player2Y;
+        player3X = other.player3X;
+        player3Y = other.player3Y;
+        ballX = other.ballX;
+        ballY = other.ballY;
+        powerUpX = other.powerUpX;
+        powerUpY = other.powerUpY;
+        player1Score = other.player1Score;
+        player2Score = other.player2Score;
+        player3Score = other.player3Score;
+        worldWidth = other.worldWidth;
+        worldHeight = other.worldHeight;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return server time in milliseconds, see {@link PongApp#serverTime()}
+     */
+    public long getServerTime() {
+        return serverTime;
+    }
+
+    public int getRoom() {
+        return room;
+    }
+
+    public boolean isPowerUpActive() {
+        return powerUpActive;
+    }
+
+    /**
+     * @return true once the room has ended, no further snapshots will follow
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public double getPlayer1X() {
+        return player1X;
+    }
+
+    public double getPlayer1Y() {
+        return player1Y;
+    }
+
+    public double getPlayer2X() {
+        return player2X;
+    }
+
+    public double getPlayer2Y() {
+        return player2Y;
+    }
+
+    public double getPlayer3X() {
+        return player3X;
+    }
+
+    public double getPlayer3Y() {
+        return player3Y;
+    }
+
+    public double getBallX() {
+        return ballX;
+    }
+
+    public double getBallY() {
+        return ballY;
+    }
+
+    public double getPowerUpX() {
+        return powerUpX;
+    }
+
+    public double getPowerUpY() {
+        return powerUpY;
+    }
+
+    public int getPlayer1Score() {
+        return player1Score;
+    }
+
+    public int getPlayer2Score() {
+        return player2Score;
+    }
+
+    public int getPlayer3Score() {
+        return player3Score;
+    }
+
+    public int getWorldWidth() {
+        return worldWidth;
+    }
+
+    public int getWorldHeight() {
+        return worldHeight;
+    }
+}
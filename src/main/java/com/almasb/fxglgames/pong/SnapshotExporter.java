@@ -0,0 +1,146 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Publishes the latest {@link Snapshot} of a room into a memory-mapped file that local processes
+ * can read without sockets or parsing, see {@link SnapshotReader}.
+ *
+ * The file is a fixed little-endian layout guarded by a sequence number (seqlock):
+ * the writer makes the sequence odd, writes the fields, then makes it even again.
+ * A reader copies the fields between two reads of the same even sequence.
+ *
+ * <pre>
+ *   0 int    magic 0x504F4E47 ("PONG")
+ *   4 int    layout version
+ *   8 long   sequence
+ *  16 long   tick
+ *  24 long   server time, ms
+ *  32 int    room
+ *  36 int    flags: 1 = power up active, 2 = room finished
+ *  40 double player1 x, y, player2 x, y, player3 x, y, ball x, y, power up x, y
+ * 120 int    player1 score, player2 score, player3 score
+ * 132 int    world width, world height
+ * </pre>
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public final class SnapshotExporter implements AutoCloseable {
+
+    static final int MAGIC = 0x504F4E47;
+    static final int VERSION = 1;
+    static final int FILE_SIZE = 144;
+
+    static final int SEQ = 8;
+    static final int TICK = 16;
+    static final int SERVER_TIME = 24;
+    static final int ROOM = 32;
+    static final int FLAGS = 36;
+    static final int POSITIONS = 40;
+    static final int SCORES = 120;
+    static final int WORLD_SIZE = 132;
+
+    static final int FLAG_POWER_UP = 1;
+    static final int FLAG_FINISHED = 2;
+
+    static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private long seq = 0;
+
+    /**
+     * An existing file is truncated, so readers never see a snapshot left in it by an earlier room.
+     */
+    public SnapshotExporter(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        LONG.setVolatile(buffer, SEQ, seq);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+    }
+
+    /**
+     * Publishes the snapshot, readers see either the previous one or this one, never a mix.
+     */
+    public void publish(Snapshot s) {
+        LONG.setVolatile(buffer, SEQ, ++seq);
+
+        // the odd sequence must be visible before any field changes
+        VarHandle.storeStoreFence();
+
+        buffer.putLong(TICK, s.tick);
+        buffer.putLong(SERVER_TIME, s.serverTime);
+        buffer.putInt(ROOM, s.room);
+        buffer.putInt(FLAGS, (s.powerUpActive ? FLAG_POWER_UP : 0) | (s.finished ? FLAG_FINISHED : 0));
+
+        buffer.putDouble(POSITIONS, s.player1X);
+        buffer.putDouble(POSITIONS + 8, s.player1Y);
+        buffer.putDouble(POSITIONS + 16, s.player2X);
+        buffer.putDouble(POSITIONS + 24, s.player2Y);
+        buffer.putDouble(POSITIONS + 32, s.player3X);
+        buffer.putDouble(POSITIONS + 40, s.player3Y);
+        buffer.putDouble(POSITIONS + 48, s.ballX);
+        buffer.putDouble(POSITIONS + 56, s.ballY);
+        buffer.putDouble(POSITIONS + 64, s.powerUpX);
+        buffer.putDouble(POSITIONS + 72, s.powerUpY);
+
+        buffer.putInt(SCORES, s.player1Score);
+        buffer.putInt(SCORES + 4, s.player2Score);
+        buffer.putInt(SCORES + 8, s.player3Score);
+
+        buffer.putInt(WORLD_SIZE, s.worldWidth);
+        buffer.putInt(WORLD_SIZE + 4, s.worldHeight);
+
+        LONG.setRelease(buffer, SEQ, ++seq);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.geometry.VPos;
+import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Renders a room from the snapshot files written by {@link SnapshotExporter}, in its own process and at
+ * its own frame rate, so that watching a match costs the server nothing.
+ * Snapshots are drawn {@link #INTERPOLATION_DELAY} ms behind the latest one, interpolating between the two around
+ * that time, which keeps motion smooth when frames and ticks do not line up.
+ *
+ * Usage: -Dpong.snapshot.dir=dir SnapshotObserver [--room=id]. Without a room id the observer waits for room 1.
+ * When a room finishes the observer moves on to the next room that has a file, rooms merged into others
+ * or dropped before starting never get one.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public class SnapshotObserver extends Application {
+
+    private static final long INTERPOLATION_DELAY = 50;
+    private static final int HISTORY = 8;
+
+    private static final int DEFAULT_WIDTH = 800;
+    private static final int DEFAULT_HEIGHT = 600;
+
+    private Path directory;
+    private int room;
+    private SnapshotReader reader;
+
+    private final Snapshot latest = new Snapshot();
+    private final Snapshot drawn = new Snapshot();
+
+    // recent distinct snapshots, oldest first
+    private final Snapshot[] history = new Snapshot[HISTORY];
+    private int historySize = 0;
+
+    // smallest local time minus server time seen, maps server time to local time
+    private long clockOffset = Long.MAX_VALUE;
+
+    private GraphicsContext g;
+    private Font scoreFont;
+
+    @Override
+    public void start(Stage stage) {
+        directory = Paths.get(System.getProperty("pong.snapshot.dir", "."));
+        room = Integer.parseInt(getParameters().getNamed().getOrDefault("room", "1"));
+
+        for (int i = 0; i < HISTORY; i++) {
+            history[i] = new Snapshot();
+        }
+
+        var canvas = new Canvas(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+        g = canvas.getGraphicsContext2D();
+
+        var fontStream = getClass().getResourceAsStream("/assets/ui/fonts/pong.ttf");
+        scoreFont = fontStream != null ? Font.loadFont(fontStream, 72) : Font.font(72);
+
+        stage.setTitle("Pong Observer");
+        stage.setScene(new Scene(new StackPane(canvas)));
+        stage.show();
+
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                update(now / 1_000_000);
+                render(canvas);
+            }
+        }.start();
+    }
+
+    private void update(long localMillis) {
+        if (reader == null && !attach())
+            return;
+
+        if (!reader.read(latest))
+            return;
+
+        if (historySize == 0 || latest.tick != history[historySize - 1].tick) {
+            push(latest);
+            clockOffset = Math.min(clockOffset, localMillis - latest.serverTime);
+        }
+
+        if (latest.finished) {
+            detach();
+            room++;
+            return;
+        }
+
+        interpolate(localMillis - clockOffset - INTERPOLATION_DELAY);
+    }
+
+    private boolean attach() {
+        Path file = findRoomFile();
+        if (file == null)
+            return false;
+
+        try {
+            reader = new SnapshotReader(file);
+            historySize = 0;
+            clockOffset = Long.MAX_VALUE;
+            return true;
+        } catch (IOException e) {
+            // the server may still be creating it
+            return false;
+        }
+    }
+
+    /**
+     * @return file of the current room, or else of the room with the lowest id above it, null if there is none yet
+     */
+    private Path findRoomFile() {
+        Path file = directory.resolve("room-" + room + ".snap");
+        if (Files.exists(file))
+            return file;
+
+        int next = -1;
+
+        try (var files = Files.newDirectoryStream(directory, "room-*.snap")) {
+            for (var f : files) {
+                var name = f.getFileName().toString();
+
+                int id;
+                try {
+                    id = Integer.parseInt(name.substring("room-".length(), name.length() - ".snap".length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+
+                if (id > room && (next < 0 || id < next)) {
+                    next = id;
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (next < 0)
+            return null;
+
+        room = next;
+        return directory.resolve("room-" + room + ".snap");
+    }
+
+    private void detach() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        reader = null;
+    }
+
+    private void push(Snapshot s) {
+        if (historySize == HISTORY) {
+            var oldest = history[0];
+            System.arraycopy(history, 1, history, 0, HISTORY - 1);
+            history[HISTORY - 1] = oldest;
+            historySize--;
+        }
+
+        history[historySize++].copyFrom(s);
+    }
+
+    /**
+     * Fills {@link #drawn} with the state at given server time.
+     */
+    private void interpolate(long serverTime) {
+        if (historySize == 0)
+            return;
+
+        Snapshot from = history[0];
+        Snapshot to = history[0];
+
+        for (int i = 0; i < historySize; i++) {
+            to = history[i];
+            if (to.serverTime >= serverTime)
+                break;
+            from = to;
+        }
+
+        drawn.copyFrom(to);
+
+        if (from == to || to.serverTime == from.serverTime)
+            return;
+
+        double t = Math.max(0, Math.min(1, (double) (serverTime - from.serverTime) / (to.serverTime - from.serverTime)));
+
+        drawn.player1X = lerp(from.player1X, to.player1X, t);
+        drawn.player1Y = lerp(from.player1Y, to.player1Y, t);
+        drawn.player2X = lerp(from.player2X, to.player2X, t);
+        drawn.player2Y = lerp(from.player2Y, to.player2Y, t);
+        drawn.player3X = lerp(from.player3X, to.player3X, t);
+        drawn.player3Y = lerp(from.player3Y, to.player3Y, t);
+
+        // the ball is teleported to the centre when it escapes, do not slide it across the screen
+        if (Math.abs(to.ballX - from.ballX) < to.worldWidth / 4.0 && Math.abs(to.ballY - from.ballY) < to.worldHeight / 4.0) {
+            drawn.ballX = lerp(from.ballX, to.ballX, t);
+            drawn.ballY = lerp(from.ballY, to.ballY, t);
+        }
+    }
+
+    private static double lerp(double a, double b, double t) {
+        return a + (b - a) * t;
+    }
+
+    private void render(Canvas canvas) {
+        if (drawn.worldWidth > 0 && (canvas.getWidth() != drawn.worldWidth || canvas.getHeight() != drawn.worldHeight)) {
+            canvas.setWidth(drawn.worldWidth);
+            canvas.setHeight(drawn.worldHeight);
+            canvas.getScene().getWindow().sizeToScene();
+        }
+
+        g.setFill(Color.rgb(0, 0, 5));
+        g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+        if (reader == null) {
+            g.setFill(Color.GRAY);
+            g.setFont(Font.font(24));
+            g.setTextAlign(TextAlignment.LEFT);
+            g.setTextBaseline(VPos.BASELINE);
+            g.fillText("Waiting for room " + room, 20, 40);
+            return;
+        }
+
+        // sizes and colours match PongFactory
+        g.setFill(Color.RED);
+        g.fillRect(drawn.player1X, drawn.player1Y, 20, 100);
+
+        g.setFill(Color.BLUE);
+        g.fillRect(drawn.player2X, drawn.player2Y, 20, 100);
+
+        g.setFill(Color.GREEN);
+        g.fillRect(drawn.player3X, drawn.player3Y, 100, 20);
+
+        if (drawn.powerUpActive) {
+            g.setFill(Color.RED);
+            g.fillRect(drawn.powerUpX, drawn.powerUpY, 40, 40);
+        }
+
+        g.setFill(Color.LIGHTYELLOW);
+        g.fillOval(drawn.ballX, drawn.ballY, 10, 10);
+
+        // score positions match main.fxml and MainUIController
+        g.setFont(scoreFont);
+        g.setTextBaseline(VPos.TOP);
+
+        g.setTextAlign(TextAlignment.LEFT);
+        g.setFill(Color.RED);
+        g.fillText(String.valueOf(drawn.player1Score), 100, 100);
+
+        g.setTextAlign(TextAlignment.RIGHT);
+        g.setFill(Color.GREEN);
+        g.fillText(String.valueOf(drawn.player3Score), canvas.getWidth() - 500, 100);
+
+        g.setFill(Color.BLUE);
+        g.fillText(String.valueOf(drawn.player2Score), canvas.getWidth() - 100, 100);
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.almasb.fxglgames.pong.SnapshotExporter.*;
+
+/**
+ * Reads the latest {@link Snapshot} from a file written by {@link SnapshotExporter}.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public final class SnapshotReader implements AutoCloseable {
+
+    private static final int MAX_RETRIES = 100;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    public SnapshotReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException("Not a version " + VERSION + " snapshot file: " + file);
+    }
+
+    /**
+     * Copies the latest published snapshot into given object.
+     *
+     * @return false if nothing has been published yet or the writer kept the file busy for every retry
+     */
+    public boolean read(Snapshot s) {
+        for (int i = 0; i < MAX_RETRIES; i++) {
+            long before = (long) LONG.getAcquire(buffer, SEQ);
+
+            if (before == 0)
+                return false;
+
+            // odd while the writer is in the middle of a publish
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            s.tick = buffer.getLong(TICK);
+            s.serverTime = buffer.getLong(SERVER_TIME);
+            s.room = buffer.getInt(ROOM);
+
+            int flags = buffer.getInt(FLAGS);
+            s.powerUpActive = (flags & FLAG_POWER_UP) != 0;
+            s.finished = (flags & FLAG_FINISHED) != 0;
+
+            s.player1X = buffer.getDouble(POSITIONS);
+            s.player1Y = buffer.getDouble(POSITIONS + 8);
+            s.player2X = buffer.getDouble(POSITIONS + 16);
+            s.player2Y = buffer.getDouble(POSITIONS + 24);
+            s.player3X = buffer.getDouble(POSITIONS + 32);
+            s.player3Y = buffer.getDouble(POSITIONS + 40);
+            s.ballX = buffer.getDouble(POSITIONS + 48);
+            s.ballY = buffer.getDouble(POSITIONS + 56);
+            s.powerUpX = buffer.getDouble(POSITIONS + 64);
+            s.powerUpY = buffer.getDouble(POSITIONS + 72);
+
+            s.player1Score = buffer.getInt(SCORES);
+            s.player2Score = buffer.getInt(SCORES + 4);
+            s.player3Score = buffer.getInt(SCORES + 8);
+
+            s.worldWidth = buffer.getInt(WORLD_SIZE);
+            s.worldHeight = buffer.getInt(WORLD_SIZE + 4);
+
+            VarHandle.loadLoadFence();
+
+            if ((long) LONG.getAcquire(buffer, SEQ) == before)
+                return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Runs the per message and per tick code paths on synthetic data before the server accepts players,
+ * so that they are loaded and JIT-compiled before the first real match.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+final class Warmup {
+
+    private Warmup() { }
+
+    /**
+     * @return a value derived from the work done, so that it cannot be optimised away
+     */
+    static long run(int iterations) throws Exception {
+        var random = new Random(42);
+
+        int level = PongApp.COMPRESSION_LEVEL == PongApp.COMPRESSION_OFF ? Deflater.BEST_SPEED : PongApp.COMPRESSION_LEVEL;
+
+        // a tracer of its own, so that warm-up traffic never shows up in the real trace
+        var tracer = new PacketTracer(1024, true);
+
+        var plainWriter = new PongApp.MessageWriterS(OutputStream.nullOutputStream(), level, tracer);
+        var compressedWriter = new PongApp.MessageWriterS(OutputStream.nullOutputStream(), level, tracer);
+
+        var events = new GameEventRing(1024);
+        var reader = events.newReader();
+        var consumed = new long[1];
+
+        var input = new StringBuilder();
+
+        long sink = 0;
+
+        try {
+            compressedWriter.write(NetworkMessages.COMPRESSION_ON);
+
+            for (int i = 0; i < iterations; i++) {
+                var message = "GAME_DATA," + random.nextDouble() * 600 + "," + random.nextDouble() * 600 + "," + random.nextDouble() * 800
+                        + "," + random.nextDouble() * 800 + "," + random.nextDouble() * 600 + ",0,0,0," + i + "," + PongApp.serverTime();
+
+                plainWriter.write(message);
+                compressedWriter.write(message);
+
+                input.append((i & 1) == 0 ? "0,W_DOWN,S_UP" : "PONG," + i + "," + i + "," + i);
+
+                var event = events.next(GameEvent.Type.SCORE, i);
+                event.player1Score = i;
+                events.publish();
+
+                reader.poll(e -> consumed[0] += e.getPlayer1Score());
+            }
+
+            sink += readInput(input.toString(), tracer);
+
+            return sink + consumed[0] + compressedWriter.getWireBytes();
+        } finally {
+            // frees the compressed writer's deflater
+            plainWriter.close();
+            compressedWriter.close();
+        }
+    }
+
+    /**
+     * Feeds the input through a reader as a client connection would, then decodes each message like handleMessage.
+     * The reader's limits are generous so that it neither rejects nor drops the synthetic input.
+     */
+    private static long readInput(String input, PacketTracer tracer) throws Exception {
+        var bytes = input.getBytes(StandardCharsets.US_ASCII);
+        var reader = new PongApp.MessageReaderS(new ByteArrayInputStream(bytes), tracer,
+                new TokenBucket(bytes.length, bytes.length), new TokenBucket(bytes.length, bytes.length));
+
+        long sink = 0;
+
+        try {
+            while (true) {
+                var message = reader.read();
+
+                var releases = PongApp.MessageReaderS.keyReleases(message);
+                if (releases != null) {
+                    sink += releases.length();
+                }
+
+                var tokens = message.split(",");
+                for (int i = 1; i < tokens.length; i++) {
+                    sink += PongApp.decodeKeyToken(0, tokens[i]);
+                }
+            }
+        } catch (IOException e) {
+            // the reader reached the end of the input
+        }
+
+        return sink;
+    }
+}
@@ -3,4 +3,5 @@
  */
 open module pong.main {
     requires com.almasb.fxgl.all;
+    requires jdk.jfr;
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+/*
+ * The MIT License (MIT)
+ *
+ * FXGL - JavaFX Game Library
+ *
+ * Copyright (c) 2015-2017 AlmasB (almaslvl@gmail.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The simulation is a wire contract: clients must reach the same checksums from the same seed, layout and inputs.
+ * If a golden value here changes, every lockstep client has to change with it.
+ *
+ * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
+ */
+public class LockstepSimulationTest {
+
+    // the layout PongApp spawns in its default 800x600 window
+    private static final String LAYOUT = "800,600,370,0,200,270,20,100,580,270,20,100,370,520,100,20,400,300";
+
+    // with this seed and script the ball scores for every seat and takes the power up, so all rules are covered
+    private static final int SEED = 7;
+    private static final int TICKS = 3600;
+
+    private static final String GOLDEN_START = "880f7a3a34ba948";
+    private static final String GOLDEN_END = "a299045cda782536";
+    private static final String GOLDEN_SCORES = "3,5,1";
+
+    // a small court where the ball hits a wall, scoring for seat 2, in the same tick it hits seat 0's bat
+    private static final String SCORE_AND_BAT_LAYOUT = "200,100,20,35,20,10,10,40,170,30,10,40,80,90,40,10,0,0";
+
+    /**
+     * Every seat holds each of none, up/left and down/right in turn, changing at different rates.
+     */
+    private static int scriptedInput(long tick, int seat) {
+        return (int) ((tick / (20 + 15 * seat) + seat) % 3);
+    }
+
+    private static LockstepSimulation run(int seed, long ticks) {
+        var sim = LockstepSimulation.fromLayout(seed, LAYOUT);
+
+        for (long tick = 1; tick <= ticks; tick++) {
+            for (int seat = 0; seat < Room.SIZE; seat++) {
+                sim.setInput(seat, scriptedInput(tick, seat));
+            }
+            sim.step();
+        }
+
+        return sim;
+    }
+
+    @Test
+    public void goldenChecksum() {
+        assertEquals(GOLDEN_START, Long.toHexString(LockstepSimulation.fromLayout(SEED, LAYOUT).checksum()));
+        assertEquals(GOLDEN_END, Long.toHexString(run(SEED, TICKS).checksum()));
+    }
+
+    @Test
+    public void goldenState() {
+        var sim = run(SEED, TICKS);
+
+        assertEquals(TICKS, sim.getTick());
+        assertEquals(GOLDEN_SCORES, sim.getScore(0) + "," + sim.getScore(1) + "," + sim.getScore(2));
+        assertFalse(sim.isPowerUpActive());
+    }
+
+    @Test
+    public void sameInputsGiveSameChecksum() {
+        assertEquals(run(SEED, 1000).checksum(), run(SEED, 1000).checksum());
+        assertNotEquals(run(SEED, 1000).checksum(), run(SEED + 1, 1000).checksum());
+    }
+
+    @Test
+    public void layoutRoundTrips() {
+        var sim = LockstepSimulation.fromLayout(SEED, LAYOUT);
+
+        assertEquals(LAYOUT, sim.getLayout());
+        assertEquals(sim.checksum(), LockstepSimulation.fromLayout(SEED, sim.getLayout()).checksum());
+    }
+
+    @Test
+    public void ballStaysOnScreen() {
+        var sim = LockstepSimulation.fromLayout(SEED, LAYOUT);
+
+        for (long tick = 1; tick <= TICKS; tick++) {
+            for (int seat = 0; seat < Room.SIZE; seat++) {
+                sim.setInput(seat, scriptedInput(tick, seat));
+            }
+            sim.step();
+
+            assertTrue(sim.getBallX() >= 0 && sim.getBallX() <= 790, "ball x " + sim.getBallX() + " at tick " + tick);
+            assertTrue(sim.getBallY() >= 0 && sim.getBallY() <= 590, "ball y " + sim.getBallY() + " at tick " + tick);
+        }
+    }
+
+    @Test
+    public void scoreAndBatHitInSameTick() {
+        var sim = LockstepSimulation.fromLayout(1, SCORE_AND_BAT_LAYOUT);
+
+        for (long tick = 1; tick <= 300; tick++) {
+            int scoreBefore = sim.getScore(2);
+            int events = sim.step();
+
+            if ((events & LockstepSimulation.EVENT_SCORE) != 0 && (events & LockstepSimulation.EVENT_BAT) != 0) {
+                assertEquals(2, sim.getLastScorer());
+                assertEquals(scoreBefore + 1, sim.getScore(2));
+                assertEquals(0, sim.getLastBatHit());
+                return;
+            }
+        }
+
+        fail("ball never scored and hit a bat in the same tick");
+    }
+}